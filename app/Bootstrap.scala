@@ -1,7 +1,7 @@
 
 import java.util.concurrent.Executors
 
-import com.daumkakao.s2graph.core.{ExceptionHandler, Graph}
+import com.daumkakao.s2graph.core.{CacheInvalidation, ExceptionHandler, Graph}
 import config.Config
 import controllers.ApplicationController
 import play.api.mvc.{WithFilters, _}
@@ -35,6 +35,7 @@ object Global extends WithFilters(LoggingFilter, new GzipFilter()) {
     if (Config.IS_WRITE_SERVER && Config.KAFKA_PRODUCER_POOL_SIZE > 0) {
       ExceptionHandler.shutdown()
     }
+    CacheInvalidation.shutdown()
 
 
     /**
@@ -46,6 +47,7 @@ object Global extends WithFilters(LoggingFilter, new GzipFilter()) {
       /** to make sure all rpcs just flushed finished. */
       Thread.sleep(client.getFlushInterval * 2)
     }
+    Graph.shutdown()
   }
 
   override def onError(request: RequestHeader, ex: Throwable): Future[Result] = {
@@ -27,6 +27,9 @@ object Config {
   lazy val KAFKA_LOG_TOPIC_ASYNC = s"s2graphIn${PHASE}Async"
   lazy val KAFKA_FAIL_TOPIC = s"s2graphIn${PHASE}Failed"
 
+  // writes to tables with too many pending rpcs go to async topic instead of being rejected with 503
+  lazy val MUTATION_THROTTLE_TO_ASYNC = conf.getBoolean("mutation.throttle.to.async").getOrElse(false)
+
   // use Keep-Alive
   lazy val USE_KEEP_ALIVE = conf.getBoolean("use.keep.alive").getOrElse(false)
 
@@ -33,6 +33,32 @@ object AdminController extends Controller with RequestParser {
     ok(s"${System.currentTimeMillis() - startTs}")
   }
 
+  def cacheStats() = Action { request =>
+    val stats = Graph.cacheStats
+    val json = Json.obj(
+      "size" -> Graph.cache.size(),
+      "hitCount" -> stats.hitCount(),
+      "missCount" -> stats.missCount(),
+      "hitRate" -> stats.hitRate(),
+      "evictionCount" -> stats.evictionCount(),
+      "loadCount" -> stats.loadCount(),
+      "averageLoadPenaltyInMillis" -> stats.averageLoadPenalty() / 1000000.0,
+      "totalLoadTimeInMillis" -> stats.totalLoadTime() / 1000000,
+      "offHeapSize" -> Graph.offHeapCache.map(_.size).getOrElse(0L),
+      "offHeapBytes" -> Graph.offHeapCache.map(_.bytes).getOrElse(0L))
+    Ok(json).as(QueryController.applicationJsonHeader)
+  }
+
+  def mutationStats() = Action { request =>
+    val inFlightRpcs = Graph.admissionControl.snapshot.map { case ((zkQuorum, table), count) =>
+      Json.obj("zkQuorum" -> zkQuorum, "table" -> table, "count" -> count)
+    }.toSeq
+    val json = Json.obj(
+      "savedIncrements" -> Graph.savedIncrements.get(),
+      "inFlightRpcs" -> inFlightRpcs)
+    Ok(json).as(QueryController.applicationJsonHeader)
+  }
+
   def getService(serviceName: String) = Action { request =>
     Management.findService(serviceName) match {
       case None => NotFound
@@ -24,6 +24,9 @@ object ApplicationController extends Controller {
     else NotFound.withHeaders(CONNECTION -> "close")
   }
 
+  /** response when some of elements in request hit table with too many pending writes */
+  val throttledResult = ServiceUnavailable("too many pending writes, retry later.\n")
+
   def toLogMessage[A](request: Request[A], result: Result)(startedAt: Long): String = {
     val duration = System.currentTimeMillis() - startedAt
     val key = s"${request.method} ${request.uri} ${result.header.status.toString}"
@@ -21,18 +21,23 @@ object EdgeController extends Controller with RequestParser {
       try {
         Logger.debug(s"$jsValue")
         val edges = toEdges(jsValue, operation)
-        for { edge <- edges } {
-          if (edge.isAsync) {
-            ExceptionHandler.enqueue(toKafkaMessage(Config.KAFKA_LOG_TOPIC_ASYNC, edge, None))
-          } else {
-            ExceptionHandler.enqueue(toKafkaMessage(Config.KAFKA_LOG_TOPIC, edge, None))
+        val throttled = edges.map(e => !e.isAsync && Graph.isWriteThrottled(e))
+        if (throttled.contains(true) && !Config.MUTATION_THROTTLE_TO_ASYNC) {
+          Future.successful(throttledResult)
+        } else {
+          for { (edge, isThrottled) <- edges.zip(throttled) } {
+            if (edge.isAsync || isThrottled) {
+              ExceptionHandler.enqueue(toKafkaMessage(Config.KAFKA_LOG_TOPIC_ASYNC, edge, None))
+            } else {
+              ExceptionHandler.enqueue(toKafkaMessage(Config.KAFKA_LOG_TOPIC, edge, None))
+            }
           }
-        }
 
-        val edgesToStore = edges.filterNot(e => e.isAsync)
-        //FIXME:
-        Graph.mutateEdges(edgesToStore).map { rets =>
-          Ok(s"${Json.toJson(rets)}").as(QueryController.applicationJsonHeader)
+          val edgesToStore = edges.zip(throttled).collect { case (e, false) if !e.isAsync => e }
+          //FIXME:
+          Graph.mutateEdges(edgesToStore).map { rets =>
+            Ok(s"${Json.toJson(rets)}").as(QueryController.applicationJsonHeader)
+          }
         }
 
       } catch {
@@ -60,24 +65,31 @@ object EdgeController extends Controller with RequestParser {
     var vertexCnt = 0L
     var edgeCnt = 0L
     try {
-      val elements =
+      val elementsWithStr =
         for (edgeStr <- edgeStrs; str <- GraphUtil.parseString(edgeStr); element <- Graph.toGraphElement(str)) yield {
           element match {
             case v: Vertex => vertexCnt += 1
             case e: Edge => edgeCnt += 1
           }
-          if (element.isAsync) {
+          (element, str, !element.isAsync && Graph.isWriteThrottled(element))
+        }
+
+      if (elementsWithStr.exists(_._3) && !Config.MUTATION_THROTTLE_TO_ASYNC) {
+        Future.successful(throttledResult)
+      } else {
+        for ((element, str, isThrottled) <- elementsWithStr) {
+          if (element.isAsync || isThrottled) {
             ExceptionHandler.enqueue(toKafkaMessage(Config.KAFKA_LOG_TOPIC_ASYNC, element, Some(str)))
           } else {
             ExceptionHandler.enqueue(toKafkaMessage(Config.KAFKA_LOG_TOPIC, element, Some(str)))
           }
-          element
         }
 
-      //FIXME:
-      val elementsToStore = elements.filterNot(e => e.isAsync)
-      Graph.mutateElements(elementsToStore).map { rets =>
-        Ok(s"${Json.toJson(rets)}").as(QueryController.applicationJsonHeader)
+        //FIXME:
+        val elementsToStore = elementsWithStr.collect { case (e, _, false) if !e.isAsync => e }
+        Graph.mutateElements(elementsToStore).map { rets =>
+          Ok(s"${Json.toJson(rets)}").as(QueryController.applicationJsonHeader)
+        }
       }
     } catch {
       case e: KGraphExceptions.JsonParseException => Future.successful(BadRequest(s"$e"))
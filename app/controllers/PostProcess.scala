@@ -22,6 +22,35 @@ object PostProcess extends JSONParser {
   val SCORE_FIELD_NAME = "scoreSum"
   val timeoutResults = Json.obj("size" -> 0, "results" -> Json.arr(), "isTimeout" -> true)
 
+  /** score, then timestamp, then target and source vertex, so equal score edges keep same order between requests */
+  private val scoredEdgeOrdering = new Ordering[(Edge, Double, QueryResult)] {
+    override def compare(x: (Edge, Double, QueryResult), y: (Edge, Double, QueryResult)): Int = {
+      val byScore = java.lang.Double.compare(x._2, y._2)
+      if (byScore != 0) byScore
+      else {
+        val byTs = java.lang.Long.compare(x._1.ts, y._1.ts)
+        if (byTs != 0) byTs
+        else {
+          val byTgt = y._1.tgtVertex.id.compareTo(x._1.tgtVertex.id)
+          if (byTgt != 0) byTgt else y._1.srcVertex.id.compareTo(x._1.srcVertex.id)
+        }
+      }
+    }
+  }
+
+  /**
+   * jsons of first limit edges by scoredEdgeOrdering, skipping edges that can not be converted.
+   * negative limit keeps all. edges past top limit are ordered only when some of top limit did not convert.
+   */
+  private def orderedEdgeJsons(scoredEdges: Seq[(Edge, Double, QueryResult)], limit: Int): Seq[JsValue] = {
+    def toJsons(orderedEdges: Seq[(Edge, Double, QueryResult)]): Iterator[JsValue] =
+      orderedEdges.iterator.flatMap { case (edge, score, queryResult) => edgeToJson(edge, score, queryResult) }
+
+    val top = toJsons(TopK(scoredEdges, limit)(scoredEdgeOrdering)).toList
+    if (limit < 0 || top.size == limit || scoredEdges.size <= limit) top
+    else toJsons(TopK(scoredEdges, -1)(scoredEdgeOrdering)).take(limit).toList
+  }
+
   def groupEdgeResult(queryResultLs: Seq[QueryResult], exclude: Seq[QueryResult]) = {
     val excludeIds = resultInnerIds(exclude).map(innerId => innerId -> true).toMap
     //    filterNot {case (edge, score) => edge.props.contains(LabelMeta.degreeSeq)}
@@ -119,9 +148,12 @@ object PostProcess extends JSONParser {
     val degreeJsons = ListBuffer[JsValue]()
     val degrees = ListBuffer[JsValue]()
     val edgeJsons = ListBuffer[JsValue]()
+    val scoredEdges = ListBuffer[(Edge, Double, QueryResult)]()
+    /** true when query ran out of its time budget and results are what was collected so far */
+    val isPartial = queryResultLs.exists(_.isPartial)
 
     if (queryResultLs.isEmpty) {
-      Json.obj("size" -> 0, "degrees" -> Json.arr(), "results" -> Json.arr())
+      Json.obj("size" -> 0, "degrees" -> Json.arr(), "results" -> Json.arr(), "isPartial" -> isPartial)
     } else {
       val q = queryResultLs.head.query
       if (q.groupByColumns.isEmpty) {
@@ -141,25 +173,28 @@ object PostProcess extends JSONParser {
                 innerValToJsValue(edge.propsWithTs(LabelMeta.degreeSeq).innerVal, InnerVal.LONG)
             )
           } else {
-            for {
-              edgeJson <- edgeToJson(edge, score, queryResult)
-            } {
-              edgeJsons += edgeJson
-            }
+            scoredEdges += ((edge, score, queryResult))
+          }
+        }
+
+        /** order(and cut to query limit) before building jsons so only returned edges are serialized */
+        if (withScore) edgeJsons ++= orderedEdgeJsons(scoredEdges, q.limit)
+        else {
+          for {
+            (edge, score, queryResult) <- scoredEdges
+            edgeJson <- edgeToJson(edge, score, queryResult)
+          } {
+            edgeJsons += edgeJson
           }
         }
 
         //        val results =
         //          degreeJsons ++ edgeJsons.toList
-        val results =
-          if (withScore) {
-            degreeJsons ++ edgeJsons.sortBy(js => ((js \ "score").asOpt[Double].getOrElse(0.0) * -1, (js \ "_timestamp").asOpt[Long].getOrElse(0L) * -1))
-          } else {
-            degreeJsons ++ edgeJsons.toList
-          }
+        val results = degreeJsons ++ edgeJsons.toList
 
         queryLogger.info(s"Result: ${results.size}")
-        Json.obj("size" -> results.size, "degrees" -> degrees, "results" -> results, "impressionId" -> q.impressionId())
+        Json.obj("size" -> results.size, "degrees" -> degrees, "results" -> results, "impressionId" -> q.impressionId(),
+          "isPartial" -> isPartial)
       } else {
         for {
           queryResult <- queryResultLs
@@ -201,16 +236,17 @@ object PostProcess extends JSONParser {
           }
         }
         val groupedJsons = for {
-          (groupByKeyVals, jsVals) <- grouped
+          (groupByKeyVals, jsVals) <- grouped.toSeq
         } yield {
             val scoreSum = jsVals.map { js => (js \ "score").asOpt[Double].getOrElse(0.0) }.sum
             Json.obj("groupBy" -> Json.toJson(groupByKeyVals.toMap),
               "scoreSum" -> scoreSum,
-              "agg" -> jsVals)
+              "agg" -> jsVals) -> scoreSum
           }
 
-        val groupedSortedJsons = groupedJsons.toList.sortBy { case jsVal => -1 * (jsVal \ "scoreSum").as[Double] }
-        Json.obj("size" -> groupedJsons.size, "results" -> Json.toJson(groupedSortedJsons), "impressionId" -> q.impressionId())
+        val groupedSortedJsons = TopK.byScore(groupedJsons, q.limit).map(_._1)
+        Json.obj("size" -> groupedSortedJsons.size, "results" -> Json.toJson(groupedSortedJsons), "impressionId" -> q.impressionId(),
+          "isPartial" -> isPartial)
       }
     }
   }
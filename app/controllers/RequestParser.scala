@@ -139,6 +139,9 @@ trait RequestParser extends JSONParser {
       val removeCycle = (jsValue \ "removeCycle").asOpt[Boolean].getOrElse(true)
       val selectColumns = (jsValue \ "select").asOpt[List[String]].getOrElse(List.empty)
       val groupByColumns = (jsValue \ "groupBy").asOpt[List[String]].getOrElse(List.empty)
+      val pipelined = (jsValue \ "pipelined").asOpt[Boolean].getOrElse(false)
+      val timeout = (jsValue \ "timeout").asOpt[Int].getOrElse(-1)
+      val limit = (jsValue \ "limit").asOpt[Int].getOrElse(-1)
       val querySteps =
         steps.map { step =>
           val labelWeights = step match {
@@ -182,7 +185,8 @@ trait RequestParser extends JSONParser {
         }
 
       val ret = Query(vertices, querySteps, removeCycle = removeCycle,
-        selectColumns = selectColumns, groupByColumns = groupByColumns, filterOutQuery = filterOutQuery)
+        selectColumns = selectColumns, groupByColumns = groupByColumns, filterOutQuery = filterOutQuery,
+        pipelined = pipelined, timeoutInMillis = timeout, limit = limit)
       //          Logger.debug(ret.toString)
       ret
     } catch {
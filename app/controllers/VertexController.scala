@@ -18,18 +18,22 @@ object VertexController extends Controller with RequestParser  {
 
     try {
       val vertices = toVertices(jsValue, operation, serviceNameOpt, columnNameOpt)
-
-      for { vertex <- vertices } {
-        if (vertex.isAsync) {
-          ExceptionHandler.enqueue(toKafkaMessage(Config.KAFKA_LOG_TOPIC_ASYNC, vertex, None))
-        } else {
-          ExceptionHandler.enqueue(toKafkaMessage(Config.KAFKA_LOG_TOPIC, vertex, None))
+      val throttled = vertices.map(v => !v.isAsync && Graph.isWriteThrottled(v))
+      if (throttled.contains(true) && !Config.MUTATION_THROTTLE_TO_ASYNC) {
+        Future.successful(throttledResult)
+      } else {
+        for { (vertex, isThrottled) <- vertices.zip(throttled) } {
+          if (vertex.isAsync || isThrottled) {
+            ExceptionHandler.enqueue(toKafkaMessage(Config.KAFKA_LOG_TOPIC_ASYNC, vertex, None))
+          } else {
+            ExceptionHandler.enqueue(toKafkaMessage(Config.KAFKA_LOG_TOPIC, vertex, None))
+          }
+        }
+        //FIXME:
+        val verticesToStore = vertices.zip(throttled).collect { case (v, false) if !v.isAsync => v }
+        Graph.mutateVertices(verticesToStore).map { rets =>
+          Ok(s"${Json.toJson(rets)}").as(QueryController.applicationJsonHeader)
         }
-      }
-      //FIXME:
-      val verticesToStore = vertices.filterNot(v => v.isAsync)
-      Graph.mutateVertices(verticesToStore).map { rets =>
-        Ok(s"${Json.toJson(rets)}").as(QueryController.applicationJsonHeader)
       }
     } catch {
       case e: KGraphExceptions.JsonParseException => Future.successful(BadRequest(s"e"))
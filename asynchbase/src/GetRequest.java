@@ -208,7 +208,7 @@ public final class GetRequest extends HBaseRpc implements HBaseRpc.HasTable,
   }
 
   /** Returns true if this is actually an "Get" RPC. */
-  private boolean isGetRequest() {
+  boolean isGetRequest() {
     return (versions & EXIST_FLAG) == 0;
   }
 
@@ -422,6 +422,26 @@ public final class GetRequest extends HBaseRpc implements HBaseRpc.HasTable,
     return filterName;
   }
 
+  /** Returns the maximum number of values returned per row per family.  */
+  public int maxResultsPerColumnFamily() {
+    return storeLimit;
+  }
+
+  /** Returns the number of values skipped per row per family.  */
+  public int rowOffsetPerColumnFamily() {
+    return storeOffset;
+  }
+
+  /** Returns the minimum timestamp (inclusive) of the values to return.  */
+  public long minTimestamp() {
+    return minTimestamp;
+  }
+
+  /** Returns the maximum timestamp (exclusive) of the values to return.  */
+  public long maxTimestamp() {
+    return maxTimestamp;
+  }
+
   public String toString() {
     final String klass = isGetRequest() ? "GetRequest" : "Exists";
     return super.toStringWithQualifiers(klass, family, qualifiers);
@@ -490,6 +510,17 @@ public final class GetRequest extends HBaseRpc implements HBaseRpc.HasTable,
     if (server_version < RegionClient.SERVER_VERSION_095_OR_ABOVE) {
       return serializeOld(server_version);
     }
+    final ClientPB.GetRequest.Builder get = ClientPB.GetRequest.newBuilder()
+        .setRegion(region.toProtobuf()).setGet(toGetProto());
+
+    return toChannelBuffer(GetRequest.GGET, get.build());
+  }
+
+  /**
+   * Builds the protobuf {@code Get} for this request.
+   * Shared by single gets and {@link MultiGetRequest} (HBase 0.95+ only).
+   */
+  ClientPB.Get toGetProto() {
     final ClientPB.Get.Builder getpb = ClientPB.Get.newBuilder().setRow(
         Bytes.wrap(key));
 
@@ -522,10 +553,7 @@ public final class GetRequest extends HBaseRpc implements HBaseRpc.HasTable,
         .setTo(maxTimestamp));
     getpb.setStoreOffset(storeOffset);
     getpb.setStoreLimit(storeLimit);
-    final ClientPB.GetRequest.Builder get = ClientPB.GetRequest.newBuilder()
-        .setRegion(region.toProtobuf()).setGet(getpb.build());
-
-    return toChannelBuffer(GetRequest.GGET, get.build());
+    return getpb.build();
   }
 
   /** Serializes this request for HBase 0.94 and before. */
@@ -624,6 +652,20 @@ public final class GetRequest extends HBaseRpc implements HBaseRpc.HasTable,
   static ArrayList<KeyValue> convertResult(final ClientPB.Result res,
       final ChannelBuffer buf, final int cell_size) {
     final int cell_kvs = RegionClient.numberOfKeyValuesAhead(buf, cell_size);
+    return convertResultWithCells(res, buf, cell_kvs);
+  }
+
+  /**
+   * Converts a protobuf result into a list of {@link KeyValue}, peeling off
+   * exactly {@code cell_kvs} KeyValues from the cell block in the buffer.
+   * 
+   * @param res The protobuf'ed results from which to extract the KVs.
+   * @param buf The buffer from which the protobuf was read.
+   * @param cell_kvs The number of KeyValues of the cell block that belong to
+   *          this result.
+   */
+  static ArrayList<KeyValue> convertResultWithCells(final ClientPB.Result res,
+      final ChannelBuffer buf, final int cell_kvs) {
     final int size = res.getCellCount();
     final ArrayList<KeyValue> rows = new ArrayList<KeyValue>(size + cell_kvs);
     KeyValue kv = null;
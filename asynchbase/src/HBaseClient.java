@@ -35,7 +35,9 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.concurrent.Executor;
@@ -1006,6 +1008,60 @@ public final class HBaseClient {
     return sendRpcToRegion(request).addCallbacks(got, Callback.PASSTHROUGH);
   }
 
+  /**
+   * Retrieves data from HBase, batching gets that are known to be served by
+   * the same region into a single RPC.
+   * <p>
+   * Gets for which we don't know the region yet (or whose region is
+   * currently unavailable) are sent on their own, exactly like
+   * {@link #get(GetRequest)} would.  Batching is only done against HBase
+   * 0.95 and above, with older servers each get is sent individually.
+   * 
+   * @param requests The {@code get} requests.
+   * @return One deferred list of key-values per get request, in the same
+   *         order as {@code requests}.  Each of them succeeds or fails
+   *         independently of the others.
+   * @since 1.8
+   */
+  public ArrayList<Deferred<ArrayList<KeyValue>>> get(
+      final List<GetRequest> requests) {
+    final ArrayList<Deferred<ArrayList<KeyValue>>> results = new ArrayList<Deferred<ArrayList<KeyValue>>>(
+        requests.size());
+    final TreeMap<byte[], ArrayList<GetRequest>> batches = new TreeMap<byte[], ArrayList<GetRequest>>(
+        Bytes.MEMCMP);
+    final ArrayList<GetRequest> singles = new ArrayList<GetRequest>();
+    for (final GetRequest request : requests) {
+      num_gets.increment();
+      // Grab the Deferred before anything gets sent, see RegionClient.sendRpc.
+      results.add(request.getDeferred().addCallbacks(got,
+          Callback.PASSTHROUGH));
+      final RegionInfo region = getRegion(request.table, request.key);
+      if (region == null || knownToBeNSREd(region)
+          || !request.isGetRequest() || cannotRetryRequest(request)) {
+        singles.add(request);
+        continue;
+      }
+      ArrayList<GetRequest> batch = batches.get(region.name());
+      if (batch == null) {
+        batch = new ArrayList<GetRequest>();
+        batches.put(region.name(), batch);
+      }
+      batch.add(request);
+    }
+    for (final ArrayList<GetRequest> batch : batches.values()) {
+      if (batch.size() == 1) {
+        sendRpcToRegion(batch.get(0));
+      } else {
+        num_multi_rpcs.increment();
+        sendRpcToRegion(new MultiGetRequest(this, batch));
+      }
+    }
+    for (final GetRequest request : singles) {
+      sendRpcToRegion(request);
+    }
+    return results;
+  }
+
   /** Singleton callback to handle responses of "get" RPCs. */
   private static final Callback<ArrayList<KeyValue>, Object> got = new Callback<ArrayList<KeyValue>, Object>() {
     public ArrayList<KeyValue> call(final Object response) {
@@ -0,0 +1,257 @@
+/*
+ * Copyright (C) 2010-2012  The Async HBase Authors.  All rights reserved.
+ * This file is part of Async HBase.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of the StumbleUpon nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.hbase.async;
+
+import java.util.ArrayList;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+
+import com.stumbleupon.async.Callback;
+
+import org.hbase.async.generated.ClientPB.Action;
+import org.hbase.async.generated.ClientPB.MultiRequest;
+import org.hbase.async.generated.ClientPB.MultiResponse;
+import org.hbase.async.generated.ClientPB.RegionAction;
+import org.hbase.async.generated.ClientPB.RegionActionResult;
+import org.hbase.async.generated.ClientPB.ResultOrException;
+import org.hbase.async.generated.HBasePB.NameBytesPair;
+
+/**
+ * Package-private class to batch multiple {@link GetRequest}s for a same
+ * region into a single `Multi' RPC.
+ * <p>
+ * Only used with HBase 0.95 and above.  Each {@link GetRequest} in the batch
+ * keeps its own {@link com.stumbleupon.async.Deferred}, which is called back
+ * once this batch completes.  A get that fails with a recoverable error is
+ * re-sent on its own, so region splits / moves in the middle of a batch are
+ * handled by the usual single-RPC code path.
+ */
+final class MultiGetRequest extends HBaseRpc
+  implements HBaseRpc.SupportsRpcTimeout {
+
+  /** RPC method name for HBase 0.95 and above.  */
+  private static final byte[] MMULTI = { 'M', 'u', 'l', 't', 'i' };
+
+  /**
+   * Sentinel given to our own callback when the server is too old to
+   * understand a batched get.
+   */
+  private static final Object UNBATCHED = new Object();
+
+  /** Client used to re-send individual gets.  */
+  private final HBaseClient client;
+
+  /** All the gets in this batch, all for the same region.  */
+  private final ArrayList<GetRequest> batch;
+
+  /** Largest RPC timeout of the gets in this batch.  */
+  private final int rpctimeout;
+
+  /**
+   * Constructor.
+   * @param client The client to use to re-send gets that failed.
+   * @param batch The gets to batch.  Must be non-empty, must all be
+   * targeted at the same region and none of them can be an "exists" RPC.
+   */
+  MultiGetRequest(final HBaseClient client,
+                  final ArrayList<GetRequest> batch) {
+    super(batch.get(0).table(), batch.get(0).key());
+    this.client = client;
+    this.batch = batch;
+    int timeout = 0;
+    boolean failfast = true;
+    byte max_attempt = 0;
+    for (final GetRequest get : batch) {
+      timeout = Math.max(timeout, get.rpctimeout());
+      failfast &= get.failfast();
+      max_attempt = (byte) Math.max(max_attempt, get.maxAttempt);
+    }
+    this.rpctimeout = timeout;
+    this.maxAttempt = max_attempt;
+    setFailfast(failfast);
+    getDeferred().addBoth(new Dispatch());
+  }
+
+  @Override
+  byte[] method(final byte server_version) {
+    return MMULTI;
+  }
+
+  @Override
+  public int rpctimeout() {
+    return rpctimeout;
+  }
+
+  /** Returns the number of gets in this batch.  */
+  public int size() {
+    return batch.size();
+  }
+
+  /**
+   * Gives up on batching and sends each get on its own.
+   * Used when the server doesn't support the `Multi' RPC with gets.
+   */
+  void unbatch() {
+    cancelRpcTimout();
+    callback(UNBATCHED);
+  }
+
+  /** Serializes this request.  */
+  ChannelBuffer serialize(final byte server_version) {
+    final RegionAction.Builder actions = RegionAction.newBuilder()
+      .setRegion(getRegion().toProtobuf());
+    int i = 0;
+    for (final GetRequest get : batch) {
+      actions.addAction(Action.newBuilder()
+                        .setIndex(i++)
+                        .setGet(get.toGetProto())
+                        .build());
+    }
+    final MultiRequest req = MultiRequest.newBuilder()
+      .addRegionAction(actions.build())
+      .build();
+    return toChannelBuffer(MMULTI, req);
+  }
+
+  @Override
+  Object deserialize(final ChannelBuffer buf, final int cell_size) {
+    final MultiResponse resp = readProtobuf(buf, MultiResponse.PARSER);
+    final int ngets = batch.size();
+    final Object[] resps = new Object[ngets];
+    if (resp.getRegionActionResultCount() != 1) {
+      throw new InvalidResponseException("Expected exactly 1 region result"
+                                         + " but got "
+                                         + resp.getRegionActionResultCount(),
+                                         resp);
+    }
+    final RegionActionResult results = resp.getRegionActionResult(0);
+    if (results.hasException()) {
+      // The whole region failed, hand the same error to every get, each of
+      // them will be retried on its own if the error is recoverable.
+      final NameBytesPair pair = results.getException();
+      for (int j = 0; j < ngets; j++) {
+        resps[j] = RegionClient.decodeExceptionPair(batch.get(j), pair);
+      }
+      if (cell_size != 0) {
+        buf.skipBytes(cell_size);
+      }
+      return new Response(resps);
+    }
+    final int nresults = results.getResultOrExceptionCount();
+    if (nresults != ngets) {
+      throw new InvalidResponseException("Expected " + ngets
+                                         + " results but got " + nresults,
+                                         resp);
+    }
+    for (int j = 0; j < nresults; j++) {
+      final ResultOrException roe = results.getResultOrException(j);
+      final int index = roe.getIndex();
+      if (index < 0 || index >= ngets) {
+        throw new InvalidResponseException("Unexpected result #" + index,
+                                           results);
+      }
+      if (roe.hasException()) {
+        resps[index] = RegionClient.decodeExceptionPair(batch.get(index),
+                                                        roe.getException());
+      } else if (roe.hasResult()) {
+        // Cells carried in the cell block come in the same order as the
+        // results, so just peel off as many as this result claims.
+        resps[index] = GetRequest.convertResultWithCells(roe.getResult(), buf,
+          roe.getResult().getAssociatedCellCount());
+      } else {
+        resps[index] = new ArrayList<KeyValue>(0);
+      }
+    }
+    return new Response(resps);
+  }
+
+  public String toString() {
+    return "MultiGetRequest(region=" + getRegion() + ", size=" + batch.size()
+      + ", attempt=" + attempt + ')';
+  }
+
+  /**
+   * Response to a {@link MultiGetRequest} RPC.
+   */
+  final class Response {
+
+    /** Response for each get that was in the batch, in the same order.  */
+    private final Object[] resps;
+
+    /** Constructor.  */
+    Response(final Object[] resps) {
+      this.resps = resps;
+    }
+
+    /** Returns the result number #i embodied in this response.  */
+    public Object result(final int i) {
+      return resps[i];
+    }
+
+  }
+
+  /**
+   * Hands the outcome of this batch over to each individual get.
+   */
+  private final class Dispatch implements Callback<Object, Object> {
+
+    public Object call(final Object resp) {
+      if (resp instanceof Response) {
+        final Response response = (Response) resp;
+        for (int i = 0; i < batch.size(); i++) {
+          final GetRequest get = batch.get(i);
+          final Object r = response.result(i);
+          if (r instanceof RecoverableException && !get.failfast()) {
+            client.sendRpcToRegion(get);
+          } else {
+            get.callback(r);
+          }
+        }
+      } else if (resp == UNBATCHED
+                 || (resp instanceof RecoverableException
+                     && !(resp instanceof RpcTimeoutException))) {
+        for (final GetRequest get : batch) {
+          client.sendRpcToRegion(get);
+        }
+      } else {
+        // Non-recoverable error or timeout: fail every get of the batch,
+        // they shared the same deadline anyway.
+        for (final GetRequest get : batch) {
+          get.callback(resp instanceof RpcTimeoutException
+                       ? new RpcTimeoutException(get) : resp);
+        }
+      }
+      return null;
+    }
+
+    public String toString() {
+      return "multi-get dispatch";
+    }
+
+  }
+
+}
@@ -888,6 +888,11 @@ final class RegionClient extends ReplayingDecoder<VoidEnum> {
           return;
         }
         addSingleEditCallbacks(edit);
+      } else if (rpc instanceof MultiGetRequest
+          && server_version < SERVER_VERSION_095_OR_ABOVE) {
+        // Batched gets are only understood by HBase 0.95 and above.
+        ((MultiGetRequest) rpc).unbatch();
+        return;
       } else if (rpc instanceof MultiAction) {
         // Transform single-edit multi-put into single-put.
         final MultiAction batch = (MultiAction) rpc;
@@ -0,0 +1,67 @@
+package com.daumkakao.s2graph.core
+
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicInteger
+
+import com.stumbleupon.async.{Callback, Deferred}
+
+import scala.collection.JavaConversions._
+
+/**
+ * counts mutation rpcs sent but not yet answered per (zkQuorum, table),
+ * including snapshot gets and compare and sets of strong consistency labels.
+ * a table is overloaded once maxInFlightRpcs are pending on it, new writes to it should be turned away
+ * (or queued elsewhere) until HBase catches up. non positive maxInFlightRpcs never overloads.
+ */
+final class AdmissionControl(maxInFlightRpcs: Int) {
+
+  private val inFlight = new ConcurrentHashMap[(String, String), AtomicInteger]()
+
+  def enabled: Boolean = maxInFlightRpcs > 0
+
+  private def counter(key: (String, String)): AtomicInteger = {
+    val existing = inFlight.get(key)
+    if (existing != null) existing
+    else {
+      val created = new AtomicInteger(0)
+      val old = inFlight.putIfAbsent(key, created)
+      if (old == null) created else old
+    }
+  }
+
+  /** rpc is sent. counters are kept once created since there are only few tables. */
+  def acquire(key: (String, String)): Unit = counter(key).incrementAndGet()
+
+  /** rpc is answered, successfully or not. */
+  def release(key: (String, String)): Unit = counter(key).decrementAndGet()
+
+  /** counts deferred sent by send as in flight on key until it is answered. */
+  def track[T](key: (String, String))(send: => Deferred[T]): Deferred[T] = {
+    if (!enabled) send
+    else {
+      acquire(key)
+      val deferred = try {
+        send
+      } catch {
+        case e: Exception =>
+          release(key)
+          throw e
+      }
+      deferred.addBoth(new Callback[T, T] {
+        def call(arg: T): T = {
+          release(key)
+          arg
+        }
+      })
+    }
+  }
+
+  def inFlightRpcs(key: (String, String)): Int = {
+    val c = inFlight.get(key)
+    if (c == null) 0 else c.get()
+  }
+
+  def isOverloaded(key: (String, String)): Boolean = enabled && inFlightRpcs(key) >= maxInFlightRpcs
+
+  def snapshot: Map[(String, String), Int] = inFlight.map { case (key, c) => key -> c.get() }.toMap
+}
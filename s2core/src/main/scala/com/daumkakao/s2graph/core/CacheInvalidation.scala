@@ -0,0 +1,137 @@
+package com.daumkakao.s2graph.core
+
+import java.net.InetAddress
+import java.util.Properties
+
+import com.daumkakao.s2graph.core.mysqls.Model
+import com.typesafe.config.Config
+import kafka.consumer.{Consumer, ConsumerConfig, ConsumerConnector}
+import kafka.serializer.StringDecoder
+import org.apache.commons.codec.binary.Base64
+import org.apache.kafka.clients.producer.ProducerRecord
+import play.api.Logger
+
+/**
+ * cluster wide cache invalidation over kafka.
+ * every node applies invalidations locally first, then publishes them through ExceptionHandler's producer.
+ * every node consumes the topic with its own consumer group, so all nodes see all messages,
+ * and skips messages it published itself. consumer group is named after node id, so it must stay same across restarts,
+ * cache.invalidation.node.id or host name. set cache.invalidation.node.id when several nodes share a host.
+ *
+ * message is one line of tab separated fields, starting with publishing node id.
+ *  - row: HBase rows written, as base64 table:key pairs separated by comma.
+ *  - model: model cache key expired, with model name and whether it is list cache.
+ */
+object CacheInvalidation {
+
+  sealed trait Invalidation
+
+  case class Rows(rows: Seq[GetRequestKey.Row]) extends Invalidation
+
+  case class ModelKey(modelName: String, isList: Boolean, key: String) extends Invalidation
+
+  var nodeId = InetAddress.getLocalHost.getHostName
+
+  var enabled = false
+  var topic = "cacheInvalidation_dev"
+  private var connector: Option[ConsumerConnector] = None
+
+  /** how messages leave this node. ExceptionHandler's kafka producer unless replaced, e.g. in tests. */
+  var publisher: (String, String) => Unit = { (key, msg) =>
+    ExceptionHandler.enqueue(ExceptionHandler.KafkaMessage(new ProducerRecord[String, String](topic, key, msg)))
+  }
+
+  def apply(config: Config): Unit = {
+    enabled = config.hasPath("cache.invalidation.enabled") && config.getBoolean("cache.invalidation.enabled")
+    val phase = if (config.hasPath("phase")) config.getString("phase") else "dev"
+    topic = if (config.hasPath("cache.invalidation.topic")) config.getString("cache.invalidation.topic") else s"cacheInvalidation_$phase"
+    if (config.hasPath("cache.invalidation.node.id")) nodeId = config.getString("cache.invalidation.node.id")
+    if (enabled) startConsumer(config, phase)
+  }
+
+  def publish(invalidation: Invalidation): Unit = {
+    if (enabled) {
+      val (key, msg) = invalidation match {
+        case Rows(rows) => rows.headOption.map(row => Base64.encodeBase64URLSafeString(row.key)).getOrElse("") -> encode(nodeId, invalidation)
+        case ModelKey(modelName, _, key) => key -> encode(nodeId, invalidation)
+      }
+      publisher(key, msg)
+    }
+  }
+
+  def encode(sender: String, invalidation: Invalidation): String = invalidation match {
+    case Rows(rows) =>
+      val encodedRows = rows.map { row =>
+        Base64.encodeBase64URLSafeString(row.table) + ":" + Base64.encodeBase64URLSafeString(row.key)
+      }
+      Seq(sender, "row", encodedRows.mkString(",")).mkString("\t")
+    case ModelKey(modelName, isList, key) =>
+      Seq(sender, "model", modelName, isList.toString, key).mkString("\t")
+  }
+
+  /** (sender, invalidation), None for malformed message. */
+  def decode(msg: String): Option[(String, Invalidation)] = {
+    msg.split("\t", 5).toList match {
+      case sender :: "row" :: encodedRows :: Nil =>
+        val rows = for {
+          encodedRow <- encodedRows.split(",").toSeq if encodedRow.nonEmpty
+        } yield {
+          val Array(table, key) = encodedRow.split(":", 2)
+          new GetRequestKey.Row(Base64.decodeBase64(table), Base64.decodeBase64(key))
+        }
+        Option(sender -> Rows(rows))
+      case sender :: "model" :: modelName :: isList :: key :: Nil =>
+        Option(sender -> ModelKey(modelName, isList.toBoolean, key))
+      case _ => None
+    }
+  }
+
+  /** applies message published by other node. */
+  def handle(msg: String): Unit = {
+    try {
+      decode(msg) match {
+        case Some((sender, _)) if sender == nodeId =>
+        case Some((_, Rows(rows))) => Graph.invalidateCachedRowsLocally(rows)
+        case Some((_, ModelKey(modelName, isList, key))) => Model.expireCacheLocally(modelName, isList, key)
+        case None => Logger.error(s"malformed cache invalidation: $msg")
+      }
+    } catch {
+      case e: Exception => Logger.error(s"cache invalidation failed: $msg, $e", e)
+    }
+  }
+
+  private def startConsumer(config: Config, phase: String): Unit = {
+    val props = new Properties()
+    val zkConnect =
+      if (config.hasPath("kafka.zookeeper.connect")) config.getString("kafka.zookeeper.connect")
+      else "localhost"
+    props.put("zookeeper.connect", zkConnect)
+    /** group per node, every node must see every message */
+    props.put("group.id", s"cacheInvalidation_${phase}_$nodeId")
+    props.put("auto.offset.reset", "largest")
+    props.put("auto.commit.enable", "false")
+
+    val consumer = Consumer.create(new ConsumerConfig(props))
+    connector = Option(consumer)
+    val streams = consumer.createMessageStreams(Map(topic -> 1), new StringDecoder(), new StringDecoder())
+    for (stream <- streams(topic)) {
+      val thread = new Thread(new Runnable {
+        def run(): Unit = {
+          try {
+            for (messageAndMetadata <- stream) handle(messageAndMetadata.message())
+          } catch {
+            case e: Throwable => Logger.error(s"cache invalidation consumer stopped. $e", e)
+          }
+        }
+      }, "cache-invalidation-consumer")
+      thread.setDaemon(true)
+      thread.start()
+    }
+    Logger.info(s"[CacheInvalidation]: consuming $topic from $zkConnect as $nodeId")
+  }
+
+  def shutdown(): Unit = {
+    connector.foreach(_.shutdown())
+    connector = None
+  }
+}
@@ -0,0 +1,47 @@
+package com.daumkakao.s2graph.core
+
+import java.util
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * cache keys by the HBase row they were read from, so a write on a row can find every cached entry of it.
+ * caller adds a key when it caches an entry and removes it when the entry leaves the cache.
+ */
+final class CacheRowIndex[R, K] {
+
+  private val index = new ConcurrentHashMap[R, util.HashSet[K]]()
+
+  def size: Int = index.size()
+
+  def add(row: R, key: K): Unit = {
+    var added = false
+    while (!added) {
+      val fresh = new util.HashSet[K]()
+      val prev = index.putIfAbsent(row, fresh)
+      val keys = if (prev == null) fresh else prev
+      keys.synchronized {
+        /** keys may have been dropped from index as it became empty */
+        if (index.get(row) eq keys) {
+          keys.add(key)
+          added = true
+        }
+      }
+    }
+  }
+
+  def remove(row: R, key: K): Unit = {
+    val keys = index.get(row)
+    if (keys != null) keys.synchronized {
+      keys.remove(key)
+      if (keys.isEmpty) index.remove(row, keys)
+    }
+  }
+
+  def keysOf(row: R): Seq[K] = {
+    val keys = index.get(row)
+    if (keys == null) Nil
+    else keys.synchronized {
+      scala.collection.JavaConversions.asScalaBuffer(new util.ArrayList[K](keys))
+    }
+  }
+}
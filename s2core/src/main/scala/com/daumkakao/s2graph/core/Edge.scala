@@ -1,19 +1,20 @@
 package com.daumkakao.s2graph.core
 
+import java.nio.ByteBuffer
 import java.util
 import java.util.concurrent.TimeUnit
 
 import com.daumkakao.s2graph.core.mysqls._
 
 import scala.concurrent.duration.{Duration, FiniteDuration}
-import scala.util.Random
+import scala.util.{Random, Try}
 import scala.util.hashing.MurmurHash3
 
 //import com.daumkakao.s2graph.core.models._
 
 import com.daumkakao.s2graph.core.types2._
 import play.api.libs.json.Json
-import scala.concurrent.Future
+import scala.concurrent.{Future, Promise}
 import org.apache.hadoop.hbase.client.{Increment, Delete, Put}
 import org.apache.hadoop.hbase.util.Bytes
 import org.hbase.async._
@@ -44,12 +45,11 @@ case class EdgeWithIndexInverted(srcVertex: Vertex,
   lazy val valueBytes = pendingEdgeOpt match {
     case None => value.bytes
     case Some(pendingEdge) =>
-
-      val opBytes = Array.fill(1)(op)
-      val versionBytes = Bytes.toBytes(version)
-      val propsBytes = propsToKeyValuesWithTs(pendingEdge.propsWithTs.toSeq)
-
-      Bytes.add(Bytes.add(EdgeValueInverted(op, props.toList)(version = schemaVer).bytes, opBytes), versionBytes, propsBytes)
+      /** value, op, version and pending props written into one pre-sized array */
+      val baseBytes = value.bytes
+      val pendingProps = pendingEdge.propsWithTs.toSeq
+      val writer = new BytesWriter(baseBytes.length + 1 + 8 + keyValuesWithTsLength(pendingProps))
+      writeKeyValuesWithTs(writer.put(baseBytes).put(op).putLong(version), pendingProps).toBytes
   }
   //  lazy val value = EdgeValueInverted(op, props.toList)(version = schemaVer)
 
@@ -216,7 +216,7 @@ case class Edge(srcVertex: Vertex,
                 version: Long = System.currentTimeMillis(),
                 propsWithTs: Map[Byte, InnerValLikeWithTs] = Map.empty[Byte, InnerValLikeWithTs],
                 pendingEdgeOpt: Option[Edge] = None)
-  extends GraphElement with JSONParser {
+  extends GraphElement with JSONParser with EdgePropsLike {
 
 
   import Edge._
@@ -226,6 +226,12 @@ case class Edge(srcVertex: Vertex,
   def schemaVer = label.schemaVersion
 
   def props = for ((k, v) <- propsWithTs) yield (k -> v.innerVal)
+
+  def srcInnerId: InnerValLike = srcVertex.innerId
+
+  def tgtInnerId: InnerValLike = tgtVertex.innerId
+
+  def propValue(propKey: Byte): Option[InnerValLike] = propsWithTs.get(propKey).map(_.innerVal)
 //    if (op == GraphUtil.operations("delete")) Map(LabelMeta.timeStampSeq -> InnerVal.withLong(ts, schemaVer))
 //    else for ((k, v) <- propsWithTs) yield (k -> v.innerVal)
 
@@ -368,24 +374,22 @@ case class Edge(srcVertex: Vertex,
   //
   def buildVertexPutsAsync(): List[PutRequest] = srcForVertex.buildPutsAsync() ++ tgtForVertex.buildPutsAsync()
 
+  private def isStrong = label.consistencyLevel == "strong"
+
+  /**
+   * rpcs to write as is. operations that read before write(strong consistency insert, delete, update, increment)
+   * have none and go through mutateAsync instead.
+   */
   def buildPutsAll(): List[HBaseRpc] = {
     val edgePuts = {
       if (op == GraphUtil.operations("insert")) {
-        if (label.consistencyLevel == "strong") {
-          upsert()
-          List.empty[PutRequest]
-        } else {
-          insert()
-        }
+        if (isStrong) List.empty[PutRequest]
+        else insert()
       } else if (op == GraphUtil.operations("delete")) {
-        if (label.consistencyLevel == "strong") delete()
-        else deleteBulk()
         List.empty[PutRequest]
       } else if (op == GraphUtil.operations("update")) {
-        update()
         List.empty[PutRequest]
       } else if (op == GraphUtil.operations("increment")) {
-        increment()
         List.empty[PutRequest]
       } else if (op == GraphUtil.operations("insertBulk")) {
         insert()
@@ -399,6 +403,32 @@ case class Edge(srcVertex: Vertex,
     ret
   }
 
+  /**
+   * runs operations that read before write, completes once they are done.
+   * true when there is no such operation for this edge.
+   */
+  def mutateAsync(): Future[Boolean] = {
+    val mutated =
+      if (op == GraphUtil.operations("insert")) {
+        if (isStrong) upsert()
+        else Future.successful(true)
+      } else if (op == GraphUtil.operations("delete")) {
+        if (isStrong) delete()
+        else deleteBulk()
+      } else if (op == GraphUtil.operations("update")) {
+        update()
+      } else if (op == GraphUtil.operations("increment")) {
+        increment()
+      } else {
+        Future.successful(true)
+      }
+    mutated.recover {
+      case e: Exception =>
+        Logger.error(s"mutateAsync failed. $this, $e", e)
+        false
+    }
+  }
+
   def insertBulk(createRelEdges: Boolean = false) = {
     val vertexPuts = buildVertexPuts()
     val snapshotPuts =
@@ -464,7 +494,7 @@ case class Edge(srcVertex: Vertex,
     EdgeUpdate(indexedEdgeMutations, invertedEdgeMutations, newInvertedEdge = newInvertedEdgeOpt)
   }
 
-  def deleteBulk(): Unit = {
+  def deleteBulk(): Future[Boolean] = {
 //    mutate(deleteBulkEdgeUpdate)
     for {
       (queryParam, invertedEdgeOpt) <- fetchInvertedAsync()
@@ -476,6 +506,7 @@ case class Edge(srcVertex: Vertex,
         Logger.error(s"DeleteBulk failed. $this")
         ExceptionHandler.enqueue(ExceptionHandler.toKafkaMessage(element = this))
       }
+      ret
     }
 
   }
@@ -500,7 +531,8 @@ case class Edge(srcVertex: Vertex,
   //
   //  }
   /**
-   *
+   * writes pending edge left on snapshot edge by unfinished mutation, clears it and replays it.
+   * completes once replay is done, true when there is no pending edge.
    */
   def commitPending(snapshotEdgeOpt: Option[Edge]): Future[Boolean] = {
     val pendingEdges = if (snapshotEdgeOpt.isEmpty || snapshotEdgeOpt.get.pendingEdgeOpt.isEmpty) Nil
@@ -510,19 +542,30 @@ case class Edge(srcVertex: Vertex,
       val snapshotEdge = snapshotEdgeOpt.get
       val newPut = snapshotEdge.edgesWithInvertedIndex.withNoPendingEdge().buildPutAsync()
       val expected = snapshotEdge.edgesWithInvertedIndex.valueBytes
-      for {
-        rets: Seq[Boolean] <- Graph.writeAsyncWithWait(label.hbaseZkAddr, pendingEdges.map { edge =>
-          edge.buildPutsAll
-        })
-        ret <- if (rets.forall(identity)) Graph.deferredToFutureWithoutFallback(Graph.getClient(label.hbaseZkAddr).compareAndSet(newPut, expected)).map(_.booleanValue())
+      val pendingRpcs = pendingEdges.map { edge => edge.buildPutsAll }
+      val committed = for {
+        rets: Seq[Boolean] <- Graph.writeAsyncWithWait(label.hbaseZkAddr, pendingRpcs, broadcast = false)
+        ret <- if (rets.forall(identity)) Graph.compareAndSet(label.hbaseZkAddr, newPut, expected)
         else Future.successful(false)
-      } yield ret
+      } yield {
+        /** snapshot edge row is written by compareAndSet, not by Graph.writeAsync, so it is broadcast with the others */
+        Graph.invalidateCachedRows(pendingRpcs.flatten :+ newPut, broadcast = true)
+        ret
+      }
+      /**
+       * pending edge is replayed once it is cleared from snapshot edge, otherwise replay would find it again.
+       * replay runs within the mutationSequencer slot this mutation holds, not through mutateAsync,
+       * since it shares snapshotKey and would be queued behind this very mutation.
+       */
+      committed.flatMap { ret =>
+        if (!ret) Future.successful(false)
+        else Future.sequence(pendingEdges.map(edge => edge.mutate(edge.snapshotOperation))).map(_.forall(identity))
+      }
     }
   }
 
   def commitUpdate(snapshotEdgeOpt: Option[Edge], edgeUpdate: EdgeUpdate): Future[Boolean] = {
 
-    val client = Graph.getClient(label.hbaseZkAddr)
     if (edgeUpdate.newInvertedEdge.isEmpty) Future.successful(true)
     else {
       val newPut = edgeUpdate.newInvertedEdge.get.withPendingEdge(Option(this)).buildPutAsync()
@@ -530,45 +573,54 @@ case class Edge(srcVertex: Vertex,
       val updateNewPut = edgeUpdate.newInvertedEdge.get.withNoPendingEdge().buildPutAsync()
 
       for {
-        locked <- Graph.deferredToFutureWithoutFallback(client.compareAndSet(newPut, expected))
-        indexedRets <- if (!locked) Future.successful(Seq(false)) else Graph.writeAsyncWithWait(label.hbaseZkAddr, Seq(edgeUpdate.indexedEdgeMutations))
-        committed <- if (indexedRets.forall(identity)) Graph.deferredToFutureWithoutFallback(client.compareAndSet(updateNewPut, newPut.value()))
-        else Future.successful[java.lang.Boolean](false)
-      } yield committed
+        locked <- Graph.compareAndSet(label.hbaseZkAddr, newPut, expected)
+        indexedRets <- if (!locked) Future.successful(Seq(false)) else Graph.writeAsyncWithWait(label.hbaseZkAddr, Seq(edgeUpdate.indexedEdgeMutations), broadcast = false)
+        committed <- if (indexedRets.forall(identity)) Graph.compareAndSet(label.hbaseZkAddr, updateNewPut, newPut.value())
+        else Future.successful(false)
+      } yield {
+        Graph.invalidateCachedRows(edgeUpdate.indexedEdgeMutations :+ updateNewPut, broadcast = true)
+        committed
+      }
     }
   }
 
+  /**
+   * fetch snapshot edge, commit pending edge left on it, then compare and set.
+   * completes with false once maxTryNum attempts lost their compare and set.
+   */
   def mutate(f: (Option[Edge], Edge) => EdgeUpdate,
-             tryNum: Int = 0): Unit = {
+             tryNum: Int = 0): Future[Boolean] = {
     //             exponentialBackOff: ExponentialBackOff = ExponentialBackOff()): Unit = {
     if (tryNum >= maxTryNum) {
       Logger.error(s"mutate failed after $tryNum retry")
       ExceptionHandler.enqueue(ExceptionHandler.toKafkaMessage(element = this))
       //      throw new RuntimeException(s"mutate failed after $tryNum")
+      Future.successful(false)
     } else {
-      val client = Graph.getClient(label.hbaseZkAddr)
-      val waitTime = Random.nextInt(2) + 1
-      for {
-        (queryParam, edges) <- fetchInvertedAsync()
-        invertedEdgeOpt = edges.headOption
-        edgeUpdate = f(invertedEdgeOpt, this) if edgeUpdate.newInvertedEdge.isDefined
-      } {
-        for {
-          pendingResult <- commitPending(invertedEdgeOpt)
-        } {
-          if (!pendingResult) {
-            Thread.sleep(waitTime)
-            mutate(f, tryNum + 1)
-          } else {
-            for {
-              updateResult <- commitUpdate(invertedEdgeOpt, edgeUpdate)
-            } {
-              if (!updateResult) {
-                Thread.sleep(waitTime)
-                Logger.info(s"mutate failed. retry $this")
-                mutate(f, tryNum + 1)
-              } else {
-                Logger.debug(s"mutate success: ${edgeUpdate.toLogString()}\n$this")
+      /** retry is scheduled on timer, so no thread of Graph.executionContext waits for backoff */
+      def retry(): Future[Boolean] = {
+        val promise = Promise[Boolean]
+        Graph.schedule(retryBackoffMillis(tryNum))(promise.completeWith(mutate(f, tryNum + 1)))
+        promise.future
+      }
+      fetchInvertedAsync().flatMap { case (queryParam, edges) =>
+        val invertedEdgeOpt = edges.headOption
+        val edgeUpdate = f(invertedEdgeOpt, this)
+        if (edgeUpdate.newInvertedEdge.isEmpty) {
+          Future.successful(true)
+        } else {
+          commitPending(invertedEdgeOpt).flatMap { pendingResult =>
+            if (!pendingResult) {
+              retry()
+            } else {
+              commitUpdate(invertedEdgeOpt, edgeUpdate).flatMap { updateResult =>
+                if (!updateResult) {
+                  Logger.info(s"mutate failed. retry $this")
+                  retry()
+                } else {
+                  Logger.debug(s"mutate success: ${edgeUpdate.toLogString()}\n$this")
+                  Future.successful(true)
+                }
               }
             }
           }
@@ -577,20 +629,36 @@ case class Edge(srcVertex: Vertex,
     }
   }
 
-  def upsert(): Unit = {
-    mutate(Edge.buildUpsert)
+  /** snapshot edge cell this edge compares and sets, mutations on same key are sequenced on this node. */
+  lazy val snapshotKey: Edge.SnapshotKey = {
+    val inverted = toInvertedEdgeHashLike()
+    (label.hbaseZkAddr, label.hbaseTableName,
+      ByteBuffer.wrap(Bytes.add(inverted.rowKey.bytes, inverted.qualifier.bytes)))
+  }
+
+  /** how this edge's op merges into snapshot edge. */
+  def snapshotOperation: (Option[Edge], Edge) => EdgeUpdate = {
+    if (op == GraphUtil.operations("insert")) Edge.buildUpsert
+    else if (op == GraphUtil.operations("delete")) Edge.buildDelete
+    else if (op == GraphUtil.operations("update")) Edge.buildUpdate
+    else if (op == GraphUtil.operations("increment")) Edge.buildIncrement
+    else throw new Exception(s"operation[${op}] is not supported on snapshot edge.")
   }
 
-  def delete() = {
-    mutate(Edge.buildDelete)
+  def upsert(): Future[Boolean] = {
+    Edge.mutationSequencer.submit(snapshotKey, this)
   }
 
-  def update() = {
-    mutate(Edge.buildUpdate)
+  def delete(): Future[Boolean] = {
+    Edge.mutationSequencer.submit(snapshotKey, this)
   }
 
-  def increment() = {
-    mutate(Edge.buildIncrement)
+  def update(): Future[Boolean] = {
+    Edge.mutationSequencer.submit(snapshotKey, this)
+  }
+
+  def increment(): Future[Boolean] = {
+    Edge.mutationSequencer.submit(snapshotKey, this)
   }
 
   def toJson() = {}
@@ -611,13 +679,12 @@ case class Edge(srcVertex: Vertex,
             sum += 1
           }
           case _ => {
-            props.get(seq) match {
+            propsWithTs.get(seq) match {
               case None =>
               //                Logger.error(s"Not Found SortKeyType : ${seq} for rank in Label(${labelWithDir.labelId}})'s OrderByKeys(${orderByKey.typeIds}})")
-              case Some(innerVal) => {
+              case Some(innerValWithTs) => {
                 val cost = try {
-                  //                  BigDecimal(innerVal.toString).toDouble
-                  innerVal.toString.toDouble
+                  innerValWithTs.innerVal.toDouble
                 } catch {
                   case e: Throwable => 1.0
                 }
@@ -668,6 +735,48 @@ object Edge extends JSONParser {
   val minTsVal = 0L
   // FIXME:
   val maxTryNum = 10
+  val retryBackoffBaseMillis = 5
+  val retryBackoffMaxMillis = 500
+
+  type SnapshotKey = (String, String, ByteBuffer)
+
+  /**
+   * at most one compare and set in flight per snapshot edge on this node.
+   * queued increments on same snapshot edge are summed up and compare and set once.
+   */
+  lazy val mutationSequencer = new MutationSequencer[SnapshotKey, Edge](
+    edge => edge.mutate(edge.snapshotOperation), mergeIncrements)(Graph.executionContext)
+
+  /**
+   * single increment equivalent to requestEdge followed by nextEdge.
+   * None when they are not both increments or some prop can not be summed.
+   */
+  def mergeIncrements(requestEdge: Edge, nextEdge: Edge): Option[Edge] = {
+    val increment = GraphUtil.operations("increment")
+    if (requestEdge.op != increment || nextEdge.op != increment) None
+    else Try {
+      val ts = Math.max(requestEdge.ts, nextEdge.ts)
+      val keys = requestEdge.propsWithTs.keySet ++ nextEdge.propsWithTs.keySet
+      val propsWithTs = keys.map { k =>
+        val merged = (requestEdge.propsWithTs.get(k), nextEdge.propsWithTs.get(k)) match {
+          case (Some(v1), Some(v2)) =>
+            if (k == LabelMeta.timeStampSeq) { if (v1.ts >= v2.ts) v1 else v2 }
+            else InnerValLikeWithTs(v1.innerVal + v2.innerVal, ts)
+          case (Some(v1), None) => v1
+          case (None, Some(v2)) => v2
+          case (None, None) => throw new IllegalStateException(s"missing prop $k")
+        }
+        k -> merged
+      }.toMap
+      requestEdge.copy(ts = ts, version = Math.max(requestEdge.version, nextEdge.version), propsWithTs = propsWithTs)
+    }.toOption
+  }
+
+  /** exponential backoff with full jitter: uniform in [1, min(max, base * 2^tryNum)] */
+  def retryBackoffMillis(tryNum: Int): Long = {
+    val upperBound = Math.min(retryBackoffMaxMillis.toLong, retryBackoffBaseMillis.toLong << Math.min(tryNum, 20))
+    1L + Random.nextInt(upperBound.toInt)
+  }
   /** now version information is required also **/
   type PropsPairWithTs = (Map[Byte, InnerValLikeWithTs], Map[Byte, InnerValLikeWithTs], Long, String)
 
@@ -988,15 +1097,16 @@ object Edge extends JSONParser {
       val vBytesLen = vBytes.length
       val (qualifier, _) = EdgeQualifierInverted.fromBytes(qBytes, 0, qBytes.length, param.label.schemaVersion)
 
-      val (value, _) = EdgeValueInverted.fromBytes(vBytes, 0, vBytes.length, param.label.schemaVersion)
+      val (value, valueBytesUsed) = EdgeValueInverted.fromBytes(vBytes, 0, vBytes.length, param.label.schemaVersion)
       val kvsMap = value.props.toMap
       val ts = kvsMap.get(LabelMeta.timeStampSeq) match {
         case None => version
-        case Some(v) => BigDecimal(v.innerVal.toString).toLong
+        case Some(v) => v.innerVal.toLong
       }
 
 
-      val pendingEdgePropsOffset = propsToKeyValuesWithTs(value.props).length + 1
+      /** pending edge, if any, follows value. its props keep generic key value layout on every schema version */
+      val pendingEdgePropsOffset = valueBytesUsed
       val pendingEdgeOpt = if (pendingEdgePropsOffset == vBytesLen) {
         None
       } else {
@@ -1024,6 +1134,9 @@ object Edge extends JSONParser {
 
   }
 
+  /**
+   * indexed edge is filtered on LazyEdge view first, only edges passing where clause are fully decoded.
+   */
   def toEdge(kv: KeyValue, param: QueryParam, edgeRowKeyLike: Option[EdgeRowKeyLike] = None): Option[Edge] = {
 //    Logger.debug(s"$param -> $kv")
 
@@ -1033,94 +1146,30 @@ object Edge extends JSONParser {
       EdgeRowKey.fromBytes(keyBytes, 0, keyBytes.length, param.label.schemaVersion)._1
     }
     val srcVertexId = rowKey.srcVertexId
-    var isDegree = false
-    val (tgtVertexId, props, op, ts, pendingEdgeOpt) = {
-      val kvQual = kv.qualifier()
-      val vBytes = kv.value()
-      if (kvQual.length == 0) {
-        /** degree */
-        isDegree = true
+    val kvQual = kv.qualifier()
+    val ret = if (kvQual.length == 0) {
+      /** degree */
+      if (!param.includeDegree) {
+        None
+      } else {
         val degree = Bytes.toLong(kv.value())
         //FIXME: dirty hack. dummy target vertexId
         val ts = kv.timestamp()
         val dummyProps = Map(LabelMeta.degreeSeq -> InnerValLikeWithTs.withLong(degree, ts, param.label.schemaVersion))
         val tgtVertexId = VertexId(HBaseType.DEFAULT_COL_ID, InnerVal.withStr("0", param.label.schemaVersion))
-        (tgtVertexId, dummyProps, GraphUtil.operations("insert"), ts, None)
-      } else {
-        /** edge */
-        val (qualifier, _) = EdgeQualifier.fromBytes(kvQual, 0, kvQual.length, param.label.schemaVersion)
-        val (value, _) = EdgeValue.fromBytes(vBytes, 0, vBytes.length, param.label.schemaVersion)
-
-        val index = param.label.indicesMap.get(rowKey.labelOrderSeq).getOrElse(
-          throw new RuntimeException(s"can`t find index sequence for $rowKey ${param.label}"))
-
-        var kvsMap = Map.empty[Byte, InnerValLike]
-        qualifier.propsKVs(index.metaSeqs).foreach { case (k, v) =>
-          kvsMap += (k -> v)
-        }
-        value.props.foreach { case (k, v) =>
-          kvsMap += (k -> v)
-        }
-        //          val kvs = qualifier.propsKVs(index.metaSeqs) ++ value.props
-        //          val kvsMap = kvs.toMap
-        val tgtVertexId = if (qualifier.tgtVertexId == null) {
-          kvsMap.get(LabelMeta.toSeq) match {
-            case None => qualifier.tgtVertexId
-            case Some(vId) => TargetVertexId(HBaseType.DEFAULT_COL_ID, vId)
-          }
-        } else {
-          qualifier.tgtVertexId
-        }
-
-        val ts = kvsMap.get(LabelMeta.timeStampSeq).map { v => BigDecimal(v.value.toString).toLong }.getOrElse(version)
-        val mergedProps = kvsMap.map { case (k, innerVal) => k -> InnerValLikeWithTs(innerVal, ts) }
-        (tgtVertexId, mergedProps, qualifier.op, ts, None)
-        //            val ts = kv.timestamp()
-        //            (srcVertexId, Map(LabelMeta.timeStampSeq -> InnerValLikeWithTs.withLong(ts, ts, param.label.schemaVersion)), 0.toByte, ts, None)
+        val edge = Edge(Vertex(srcVertexId, ts), Vertex(tgtVertexId, ts), rowKey.labelWithDir,
+          GraphUtil.operations("insert"), ts, version, dummyProps)
+        if (param.where.map(_.filter(edge)).getOrElse(true)) Some(edge) else None
       }
-    }
-    if (!param.includeDegree && isDegree) {
-      None
     } else {
-      val edge =
-      //        if (!param.label.isDirected && param.labelWithDir.dir == GraphUtil.directions("in")) {
-      //          Edge(Vertex(srcVertexId, ts), Vertex(tgtVertexId, ts), rowKey.labelWithDir.updateDir(0), op, ts, version, props)
-      //        } else {
-        Edge(Vertex(srcVertexId, ts), Vertex(tgtVertexId, ts), rowKey.labelWithDir, op, ts, version, props, pendingEdgeOpt)
-      //        }
-
-      //          Logger.debug(s"toEdge: $srcVertexId, $tgtVertexId, $props, $op, $ts")
-      //        val labelMetas = LabelMeta.findAllByLabelId(rowKey.labelWithDir.labelId)
-      //        val propsWithDefault = (for (meta <- param.label.metaProps) yield {
-      //          props.get(meta.seq) match {
-      //            case Some(v) => (meta.seq -> v)
-      //            case None =>
-      //              val defaultInnerVal = toInnerVal(meta.defaultValue, meta.dataType, param.label.schemaVersion)
-      //              (meta.seq -> InnerValLikeWithTs(defaultInnerVal, minTsVal))
-      //          }
-      //        }).toMap
-      //        /**
-      //         * TODO: backward compatability only. deprecate has field
-      //         */
-      //        val matches =
-      //          for {
-      //            (k, v) <- param.hasFilters
-      //            edgeVal <- propsWithDefault.get(k) if edgeVal.innerVal == v
-      //          } yield (k -> v)
-      //        val ret = if (matches.size == param.hasFilters.size && param.where.map(_.filter(edge)).getOrElse(true)) {
-      val ret = if (param.where.map(_.filter(edge)).getOrElse(true)) {
-        //      val edge = Edge(Vertex(srcVertexId, ts), Vertex(tgtVertexId, ts), rowKey.labelWithDir, op, ts, version, props)
-      //              Logger.debug(s"fetchedEdge: $edge")
-        Some(edge)
-      } else {
-        None
-      }
-//      Logger.debug(s"fetchedEdge: $ret")
-      //        val ret = Option(edge)
-      Logger.debug(s"$param, $kv, $ret")
-      //    Logger.debug(s"${cell.getQualifier().toList}, ${ret.map(x => x.toStringRaw)}")
-      ret
+      /** edge */
+      val index = param.label.indicesMap.get(rowKey.labelOrderSeq).getOrElse(
+        throw new RuntimeException(s"can`t find index sequence for $rowKey ${param.label}"))
+      val lazyEdge = new LazyEdge(kv, param, rowKey, index)
+      if (param.where.map(_.filter(lazyEdge)).getOrElse(true)) Some(lazyEdge.toEdge) else None
     }
+    Logger.debug(s"$param, $kv, $ret")
+    ret
   }
 
   //FIXME
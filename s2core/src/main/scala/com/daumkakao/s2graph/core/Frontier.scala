@@ -0,0 +1,97 @@
+package com.daumkakao.s2graph.core
+
+import java.util
+
+import com.daumkakao.s2graph.core.types2.{InnerValLike, VertexId}
+
+/**
+ * source vertices of next step, merged per vertex with their scores summed.
+ * keyed by (column id, inner id value) of VertexId, so nothing is rendered to String on the hot path.
+ * not thread safe.
+ */
+final class Frontier(expectedSize: Int = 16) {
+
+  import Frontier._
+
+  private val entries = new util.HashMap[VertexKey, Entry](Math.max(16, expectedSize * 2))
+  /** first seen order, keeps output deterministic */
+  private val ordered = new util.ArrayList[Entry](expectedSize)
+
+  def size: Int = ordered.size
+
+  def add(vertex: Vertex, score: Double): Unit = {
+    val key = VertexKey(vertex.id)
+    val entry = entries.get(key)
+    if (entry == null) {
+      val newEntry = new Entry(vertex, score)
+      entries.put(key, newEntry)
+      ordered.add(newEntry)
+    } else {
+      entry.score += score
+    }
+  }
+
+  /** vertices with aggregated score not less than threshold, in first seen order. */
+  def vertexWithScores(threshold: Double): Seq[(Vertex, Double)] = {
+    val ret = new util.ArrayList[(Vertex, Double)](ordered.size)
+    var i = 0
+    while (i < ordered.size) {
+      val entry = ordered.get(i)
+      if (entry.score >= threshold) ret.add(entry.vertex -> entry.score)
+      i += 1
+    }
+    scala.collection.JavaConversions.asScalaBuffer(ret)
+  }
+}
+
+/**
+ * running aggregation of next step source vertices while results of a step are still arriving.
+ * add returns vertices that entered top limit(by aggregated score not less than threshold) for the first time,
+ * so each vertex is handed out once. negative limit means no limit. thread safe.
+ */
+final class RunningTopK(threshold: Double, limit: Int) {
+
+  private val frontier = new Frontier()
+  private val handedOut = new util.HashSet[Frontier.VertexKey]()
+
+  def add(vertexWithScores: Seq[(Vertex, Double)]): Seq[Vertex] = synchronized {
+    vertexWithScores.foreach { case (vertex, score) => frontier.add(vertex, score) }
+    val candidates = frontier.vertexWithScores(threshold)
+    val top = if (limit >= 0) TopK.byScore(candidates, limit) else candidates
+    top.collect { case (vertex, _) if handedOut.add(Frontier.VertexKey(vertex.id)) => vertex }
+  }
+}
+
+object Frontier {
+
+  /** identity of vertex within a traversal. equal values of different InnerVal versions are same vertex. */
+  final class VertexKey(val colId: Int, val innerId: InnerValLike) {
+    override val hashCode: Int = colId * 31 + valueHash(innerId.value)
+
+    override def equals(obj: Any): Boolean = obj match {
+      case other: VertexKey => colId == other.colId && valueEquals(innerId.value, other.innerId.value)
+      case _ => false
+    }
+
+    override def toString: String = s"VertexKey($colId, $innerId)"
+  }
+
+  object VertexKey {
+    def apply(vertexId: VertexId): VertexKey = new VertexKey(vertexId.colId, vertexId.innerId)
+  }
+
+  final class Entry(val vertex: Vertex, var score: Double)
+
+  /** numbers hash by their long value so v1 Long and v2 BigDecimal of same id collide as they are equal. */
+  private def valueHash(value: Any): Int = value match {
+    case n: BigDecimal => java.lang.Long.hashCode(n.bigDecimal.longValue())
+    case l: Long => java.lang.Long.hashCode(l)
+    case blob: Array[Byte] => util.Arrays.hashCode(blob)
+    case v => v.hashCode()
+  }
+
+  private def valueEquals(value: Any, other: Any): Boolean = (value, other) match {
+    case (blob: Array[Byte], otherBlob: Array[Byte]) => util.Arrays.equals(blob, otherBlob)
+    case _ => value == other
+  }
+}
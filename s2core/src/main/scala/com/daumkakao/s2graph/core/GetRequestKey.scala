@@ -0,0 +1,75 @@
+package com.daumkakao.s2graph.core
+
+import java.util
+
+import org.hbase.async.GetRequest
+
+/**
+ * identity of what a GetRequest fetches: table, row, family, qualifiers, filter, limit, offset,
+ * time range and versions, packed into one byte array.
+ * equality compares the whole bytes, so unlike a bare hash, collisions never mix up results.
+ */
+final class GetRequestKey private(val bytes: Array[Byte], val row: GetRequestKey.Row) {
+
+  val hash64: Long = GetRequestKey.hash64(bytes)
+
+  override def hashCode: Int = (hash64 ^ (hash64 >>> 32)).toInt
+
+  override def equals(obj: Any): Boolean = obj match {
+    case other: GetRequestKey => hash64 == other.hash64 && util.Arrays.equals(bytes, other.bytes)
+    case _ => false
+  }
+
+  override def toString: String = s"GetRequestKey(${java.lang.Long.toHexString(hash64)}, ${bytes.length} bytes)"
+}
+
+object GetRequestKey {
+
+  def apply(get: GetRequest): GetRequestKey = {
+    val qualifiers = Option(get.qualifiers()).getOrElse(Array.empty[Array[Byte]])
+    val byteArrays = Seq(get.table(), get.key(), get.family(), get.filterName(), get.filter()) ++ qualifiers
+    val size = byteArrays.foldLeft(4 * 2 + 8 * 2 + 4 + 4) { (sum, arr) => sum + 4 + lengthOf(arr) }
+    val buffer = java.nio.ByteBuffer.allocate(size)
+    buffer.putInt(get.maxResultsPerColumnFamily())
+    buffer.putInt(get.rowOffsetPerColumnFamily())
+    buffer.putLong(get.minTimestamp())
+    buffer.putLong(get.maxTimestamp())
+    buffer.putInt(get.maxVersions())
+    buffer.putInt(qualifiers.length)
+    /** length prefixed, so concatenation of different arrays never collide. -1 for null. */
+    for (arr <- byteArrays) {
+      if (arr == null) buffer.putInt(-1)
+      else buffer.putInt(arr.length).put(arr)
+    }
+    new GetRequestKey(buffer.array(), new Row(get.table(), get.key()))
+  }
+
+  /** HBase row a GetRequest reads, to find cached entries when the row is written. */
+  final class Row(val table: Array[Byte], val key: Array[Byte]) {
+    override val hashCode: Int = util.Arrays.hashCode(table) * 31 + util.Arrays.hashCode(key)
+
+    override def equals(obj: Any): Boolean = obj match {
+      case other: Row => util.Arrays.equals(key, other.key) && util.Arrays.equals(table, other.table)
+      case _ => false
+    }
+  }
+
+  private def lengthOf(arr: Array[Byte]): Int = if (arr == null) 0 else arr.length
+
+  /** 64 bit FNV-1a followed by murmur3 finalizer to spread bits. */
+  private[core] def hash64(bytes: Array[Byte]): Long = {
+    var h = 0xcbf29ce484222325L
+    var i = 0
+    while (i < bytes.length) {
+      h ^= (bytes(i) & 0xff)
+      h *= 0x100000001b3L
+      i += 1
+    }
+    h ^= h >>> 33
+    h *= 0xff51afd7ed558ccdL
+    h ^= h >>> 33
+    h *= 0xc4ceb9fe1a85ec53L
+    h ^= h >>> 33
+    h
+  }
+}
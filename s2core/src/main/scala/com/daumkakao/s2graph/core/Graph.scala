@@ -2,17 +2,18 @@ package com.daumkakao.s2graph.core
 
 import java.util
 import com.daumkakao.s2graph.core.mysqls._
-import com.google.common.cache.CacheBuilder
-import scala.util.hashing.MurmurHash3
+import com.google.common.cache._
 import scala.util.{Failure, Success}
 import java.util.ArrayList
-import java.util.concurrent.{Executors}
+import java.util.concurrent.{Executors, ThreadFactory, TimeUnit}
+import java.util.concurrent.atomic.{AtomicInteger, AtomicLong}
 import com.daumkakao.s2graph.core.types2._
 import com.stumbleupon.async.{Callback, Deferred}
 import com.typesafe.config.{ConfigFactory, Config}
 import org.apache.hadoop.hbase.HBaseConfiguration
 import org.apache.hadoop.hbase.client._
 import org.hbase.async._
+import org.jboss.netty.util.{HashedWheelTimer, Timeout, TimerTask}
 import play.api.Logger
 import scala.collection.JavaConversions._
 import scala.collection.mutable.{HashMap, ListBuffer}
@@ -53,6 +54,15 @@ object Graph {
     "db.default.password" -> "graph",
     "db.default.user" -> "graph",
     "cache.max.size" -> java.lang.Integer.valueOf(100000),
+    "cache.max.weight" -> java.lang.Integer.valueOf(1000000),
+    "cache.offheap.max.bytes" -> java.lang.Long.valueOf(0L),
+    "vertex.cache.max.size" -> java.lang.Integer.valueOf(100000),
+    "vertex.cache.ttl.seconds" -> java.lang.Integer.valueOf(60),
+    "vertex.cache.negative.ttl.seconds" -> java.lang.Integer.valueOf(10),
+    "mutation.group.commit.window.millis" -> java.lang.Integer.valueOf(0),
+    "mutation.group.commit.max.size" -> java.lang.Integer.valueOf(1000),
+    "mutation.fire.and.forget.labels" -> "",
+    "mutation.max.in.flight.rpcs" -> java.lang.Integer.valueOf(0),
     "cache.ttl.seconds" -> java.lang.Integer.valueOf(60))
 
   var config: Config = ConfigFactory.parseMap(defaultConfigs)
@@ -64,13 +74,94 @@ object Graph {
   var clientFlushInterval = 100.toShort
   val defaultScore = 1.0
 
+  /** hit/miss/eviction/load time of query result cache */
+  val cacheStatsCounter = new AbstractCache.SimpleStatsCounter()
+
+  /** query result cache keys by HBase row, to invalidate them on writes */
+  val cacheRowIndex = new CacheRowIndex[GetRequestKey.Row, GetRequestKey]()
+
+  /**
+   * query result cache bounded by total number of cached edges(cache.max.weight).
+   * entries never outlive cache.ttl.seconds, and are dropped on read once older than cacheTTLInMillis of the query.
+   */
   lazy val cache = CacheBuilder.newBuilder()
-    .maximumSize(10000)
-    .build[java.lang.Integer, QueryResult]()
+    .maximumWeight(config.getLong("cache.max.weight"))
+    .weigher(new Weigher[GetRequestKey, QueryResult] {
+      def weigh(key: GetRequestKey, queryResult: QueryResult): Int = queryResult.edgeWithScoreLs.size + 1
+    })
+    .expireAfterWrite(config.getInt("cache.ttl.seconds"), TimeUnit.SECONDS)
+    .removalListener(new RemovalListener[GetRequestKey, QueryResult] {
+      def onRemoval(notification: RemovalNotification[GetRequestKey, QueryResult]): Unit = {
+        if (notification.wasEvicted()) cacheStatsCounter.recordEviction()
+        /** re-put of a live key keeps it cached, so its row must stay indexed */
+        if (notification.getCause != RemovalCause.REPLACED) cacheRowIndex.remove(notification.getKey.row, notification.getKey)
+      }
+    })
+    .build[GetRequestKey, QueryResult]()
+
+  def cacheStats: CacheStats = cacheStatsCounter.snapshot()
+
+  /** optional second tier keeping raw KeyValues off heap. disabled unless cache.offheap.max.bytes is positive */
+  lazy val offHeapCache: Option[OffHeapKeyValueCache] = {
+    val maxBytes = config.getLong("cache.offheap.max.bytes")
+    if (maxBytes > 0) Option(new OffHeapKeyValueCache(maxBytes, config.getInt("cache.ttl.seconds")))
+    else None
+  }
+
+  /**
+   * query deadlines and mutation retries. 10ms tick since retry backoffs are few milliseconds.
+   * daemon worker so it never holds jvm exit, still stopped by shutdown.
+   */
+  lazy val timer = new HashedWheelTimer(new ThreadFactory {
+    def newThread(r: Runnable): Thread = {
+      val thread = new Thread(r, "s2graph-timer")
+      thread.setDaemon(true)
+      thread
+    }
+  }, 10, TimeUnit.MILLISECONDS)
+
+  /** stops timer. timeouts not fired yet are dropped, so call after clients are flushed. */
+  def shutdown(): Unit = {
+    timer.stop()
+  }
+
+  /** runs f on executionContext after delayMillis, holding no thread while waiting. */
+  def schedule(delayMillis: Long)(f: => Unit): Unit = {
+    timer.newTimeout(new TimerTask {
+      def run(timeout: Timeout): Unit = {
+        executionContext.execute(new Runnable {
+          def run(): Unit = f
+        })
+      }
+    }, delayMillis, TimeUnit.MILLISECONDS)
+  }
+
+  /**
+   * batches non compare and set edge mutations of concurrent requests for mutation.group.commit.window.millis.
+   * only used for fire and forget labels. disabled unless window is positive.
+   */
+  lazy val groupCommit: Option[GroupCommit] = {
+    val windowMillis = config.getInt("mutation.group.commit.window.millis")
+    if (windowMillis > 0) {
+      implicit val ex = this.executionContext
+      Option(new GroupCommit(windowMillis, config.getInt("mutation.group.commit.max.size"),
+        (zkQuorum, rpcs) => writeAsync(zkQuorum, Seq(rpcs)).map(rets => rets.forall(identity)),
+        (delayMillis, f) => schedule(delayMillis)(f())))
+    } else None
+  }
+
+  /** edge fetches currently waiting on HBase, shared by identical concurrent fetches */
+  val inFlightFetches = new SingleFlight[GetRequestKey, ArrayList[KeyValue]]()
+
+  /** vertex fetched at timestamp, None when vertex did not exist. */
+  case class CachedVertex(vertexOpt: Option[Vertex], timestamp: Long)
 
   lazy val vertexCache = CacheBuilder.newBuilder()
-    .maximumSize(10000)
-    .build[java.lang.Integer, Option[Vertex]]()
+    .maximumSize(config.getLong("vertex.cache.max.size"))
+    .expireAfterWrite(config.getInt("vertex.cache.ttl.seconds"), TimeUnit.SECONDS)
+    .build[GetRequestKey, CachedVertex]()
+
+  lazy val vertexCacheNegativeTTLInMillis = config.getInt("vertex.cache.negative.ttl.seconds") * 1000L
 
   /**
    * requred: hbase.zookeeper.quorum
@@ -105,6 +196,7 @@ object Graph {
     val zkQuorum = hbaseConfig.get("hbase.zookeeper.quorum")
     clients += (zkQuorum -> getClient(zkQuorum, this.clientFlushInterval))
     ExceptionHandler.apply(config)
+    CacheInvalidation.apply(this.config)
     for {
       (k, v) <- defaultConfigs
     } {
@@ -197,41 +289,147 @@ object Graph {
   //    })
   //  }
 
-  def writeAsyncWithWait(zkQuorum: String, elementRpcs: Seq[Seq[HBaseRpc]]): Future[Seq[Boolean]] = {
+  /**
+   * drops cached query results(both tiers) read from rows written by rpcs.
+   * called before rpcs are sent and again once they completed, since a read racing with the write
+   * may have cached the old row in between. only the latter is broadcast to other nodes, in one message per call.
+   */
+  def invalidateCachedRows(rpcs: Seq[HBaseRpc], broadcast: Boolean = false): Unit = {
+    val rows = rowsOf(rpcs)
+    invalidateCachedRowsLocally(rows)
+    if (broadcast) CacheInvalidation.publish(CacheInvalidation.Rows(rows))
+  }
+
+  /** distinct rows written by rpcs */
+  def rowsOf(rpcs: Seq[HBaseRpc]): Seq[GetRequestKey.Row] =
+    rpcs.collect { case rpc: HBaseRpc.HasTable with HBaseRpc.HasKey => new GetRequestKey.Row(rpc.table(), rpc.key()) }.distinct
+
+  def invalidateCachedRowsLocally(rows: Seq[GetRequestKey.Row]): Unit = {
+    for (row <- rows) {
+      cache.invalidateAll(cacheRowIndex.keysOf(row))
+      offHeapCache.foreach(_.invalidateRow(row))
+    }
+  }
+
+  /**
+   * invalidates row of each rpc locally as soon as it completed, and broadcasts rows of all rpcs
+   * in one message after the last one completed, rather than a message per rpc.
+   */
+  private final class CacheInvalidationBatch(rpcs: Seq[HBaseRpc], broadcast: Boolean) {
+    private val pending = new AtomicInteger(rpcs.size)
+
+    def track[T](rpc: HBaseRpc, deferred: Deferred[T]): Deferred[T] = {
+      deferred.addBoth(new Callback[T, T] {
+        def call(arg: T): T = {
+          invalidateCachedRows(Seq(rpc))
+          if (pending.decrementAndGet() == 0 && broadcast) CacheInvalidation.publish(CacheInvalidation.Rows(rowsOf(rpcs)))
+          arg
+        }
+      })
+    }
+  }
+
+  /** write rpcs pending on each (zkQuorum, table), bounded by mutation.max.in.flight.rpcs. */
+  lazy val admissionControl = new AdmissionControl(config.getInt("mutation.max.in.flight.rpcs"))
+
+  /** true when element's table has too many pending writes to accept more. */
+  def isWriteThrottled(element: GraphElement): Boolean = element match {
+    case edge: Edge => admissionControl.isOverloaded((edge.label.hbaseZkAddr, edge.label.hbaseTableName))
+    case vertex: Vertex => admissionControl.isOverloaded((vertex.hbaseZkAddr, vertex.hbaseTableName))
+    case _ => false
+  }
+
+  /** counts rpc as in flight on admissionControl from send until it is answered. */
+  private def withInFlightTracking[T](zkQuorum: String, rpc: HBaseRpc)(send: => Deferred[T]): Deferred[T] = {
+    val table = rpc match {
+      case t: HBaseRpc.HasTable => new String(t.table())
+      case _ => ""
+    }
+    admissionControl.track((zkQuorum, table))(send)
+  }
+
+  /** compare and set of snapshot edge row, counted on admissionControl like other writes. */
+  def compareAndSet(zkQuorum: String, put: PutRequest, expected: Array[Byte]): Future[Boolean] = {
+    implicit val ex = this.executionContext
+    val deferred = withInFlightTracking(zkQuorum, put) {
+      getClient(zkQuorum).compareAndSet(put, expected)
+    }
+    deferredToFutureWithoutFallback(deferred).map(_.booleanValue())
+  }
+
+  /** increments not sent since they were summed up with others on same cell */
+  val savedIncrements = new AtomicLong(0L)
+
+  /**
+   * completes once every rpc is answered, true per element when all of its rpcs succeeded.
+   * increments on same cell are summed across elements and sent once, shared by every element contributed.
+   * rows written are broadcast to other nodes in one message unless broadcast is false,
+   * for callers that publish them together with rows they write by themselves.
+   */
+  def writeAsyncWithWait(zkQuorum: String, elementRpcs: Seq[Seq[HBaseRpc]], broadcast: Boolean = true): Future[Seq[Boolean]] = {
     implicit val ex = this.executionContext
     if (elementRpcs.isEmpty) {
       Future.successful(Seq.empty[Boolean])
     } else {
       val client = getClient(zkQuorum)
-      val defers = elementRpcs.map { rpcs =>
-        //TODO: register errorBacks on this operations to log error
+      val ownRpcs = elementRpcs.map(_.filterNot(IncrementCoalescer.isIncrement))
+      val coalesced = IncrementCoalescer(elementRpcs)
+      savedIncrements.addAndGet(coalesced.saved)
+      val invalidation = new CacheInvalidationBatch(ownRpcs.flatten ++ coalesced.increments, broadcast)
+      def send(rpc: HBaseRpc): Future[Boolean] = {
         //          Logger.debug(s"$rpc")
-        val defer = rpcs.map { rpc =>
-          //          Logger.debug(s"$rpc")
-          val deferred = rpc match {
+        invalidateCachedRows(Seq(rpc))
+        val deferred = withInFlightTracking(zkQuorum, rpc) {
+          rpc match {
             case d: DeleteRequest => client.delete(d)
             case p: PutRequest => client.put(p)
             case i: AtomicIncrementRequest => client.bufferAtomicIncrement(i)
           }
-          deferredCallbackWithFallback(deferred)({
-            (anyRef: Any) => anyRef match {
-              case e: Exception =>
-                Logger.error(s"mutation failed. $e", e)
-                false
-              case _ => true
-            }
-          }, {
-            false
-          })
         }
-        val ret = deferredToFutureWithoutFallback(Deferred.group(defer)).map { arr => arr.forall(identity) }
-        ret
+        deferredToFutureWithoutFallback(deferredCallbackWithFallback(invalidation.track(rpc, deferred))({
+          (anyRef: Any) => anyRef match {
+            case e: Exception =>
+              Logger.error(s"mutation failed. $e", e)
+              false
+            case _ => true
+          }
+        }, {
+          false
+        }))
+      }
+      val ownRets = ownRpcs.map(_.map(send))
+      val incrementRets = coalesced.increments.map(send)
+      val defers = ownRets.zip(coalesced.slots).map { case (rets, slots) =>
+        Future.sequence(rets ++ slots.map(incrementRets)).map { arr => arr.forall(identity) }
       }
       Future.sequence(defers)
     }
   }
 
+  /**
+   * completes once every rpc of each element is acknowledged, true per element when all of its rpcs succeeded.
+   * elements with failed rpc are sent to fail topic so that they can be replayed.
+   */
+  def writeAsyncWithAck(zkQuorum: String, elementRpcs: Seq[(GraphElement, Seq[HBaseRpc])]): Future[Seq[Boolean]] = {
+    implicit val ex = this.executionContext
+    writeAsyncWithWait(zkQuorum, elementRpcs.map(_._2)).map { rets =>
+      for (((element, rpcs), ret) <- elementRpcs.zip(rets)) yield {
+        if (!ret) {
+          Logger.error(s"write failed. $element")
+          ExceptionHandler.enqueue(ExceptionHandler.toKafkaMessage(element = element))
+        }
+        ret
+      }
+    }
+  }
+
+  /** labels written by writeAsync(fire and forget) instead of writeAsyncWithAck, set by mutation.fire.and.forget.labels */
+  lazy val fireAndForgetLabels: Set[String] =
+    config.getString("mutation.fire.and.forget.labels").split(",").map(_.trim).filter(_.nonEmpty).toSet
+
+  def isFireAndForget(label: Label): Boolean = fireAndForgetLabels.contains(label.label)
 
+  /** returns as soon as rpcs are handed to client, failures are only logged. */
   def writeAsync(zkQuorum: String, elementRpcs: Seq[Seq[HBaseRpc]]): Future[Seq[Boolean]] = {
     implicit val ex = this.executionContext
     val errorLogger = Logger("error")
@@ -239,28 +437,33 @@ object Graph {
       Future.successful(Seq.empty[Boolean])
     } else {
       val client = getClient(zkQuorum)
+      val invalidation = new CacheInvalidationBatch(elementRpcs.flatten, broadcast = true)
       val defers = elementRpcs.map { rpcs =>
         //TODO: register errorBacks on this operations to log error
         //          Logger.debug(s"$rpc")
         val defer = rpcs.map { rpc =>
           //          Logger.debug(s"$rpc")
-          val deferred = rpc match {
-            case d: DeleteRequest => client.delete(d).addErrback(new Callback[Unit, Exception] {
-              def call(arg: Exception): Unit = {
-                errorLogger.error(s"delete request failed. $d, $arg", arg)
-              }
-            })
-            case p: PutRequest => client.put(p).addErrback(new Callback[Unit, Exception] {
-              def call(arg: Exception): Unit = {
-                errorLogger.error(s"put request failed. $p, $arg", arg)
-              }
-            })
-            case i: AtomicIncrementRequest => client.bufferAtomicIncrement(i).addErrback(new Callback[Unit, Exception] {
-              def call(arg: Exception): Unit = {
-                errorLogger.error(s"increment request failed. $i, $arg", arg)
-              }
-            })
+          invalidateCachedRows(Seq(rpc))
+          val deferred = withInFlightTracking(zkQuorum, rpc) {
+            rpc match {
+              case d: DeleteRequest => client.delete(d).addErrback(new Callback[Unit, Exception] {
+                def call(arg: Exception): Unit = {
+                  errorLogger.error(s"delete request failed. $d, $arg", arg)
+                }
+              })
+              case p: PutRequest => client.put(p).addErrback(new Callback[Unit, Exception] {
+                def call(arg: Exception): Unit = {
+                  errorLogger.error(s"put request failed. $p, $arg", arg)
+                }
+              })
+              case i: AtomicIncrementRequest => client.bufferAtomicIncrement(i).addErrback(new Callback[Unit, Exception] {
+                def call(arg: Exception): Unit = {
+                  errorLogger.error(s"increment request failed. $i, $arg", arg)
+                }
+              })
+            }
           }
+          invalidation.track(rpc, deferred)
           //          deferredCallbackWithFallback(deferred)({
           //            (anyRef: Any) => anyRef match {
           //              case e: Exception => false
@@ -297,17 +500,20 @@ object Graph {
    */
   def getEdgesAsync(q: Query): Future[Seq[QueryResult]] = {
     implicit val ex = this.executionContext
+    val deadlineTs = q.deadlineTs()
     // not sure this is right. make sure refactor this after.
     try {
       if (q.steps.isEmpty) {
         // TODO: this should be get vertex query.
         Future.successful(q.vertices.map(v => QueryResult(query = q, stepIdx = 0, queryParam = QueryParam.empty)))
+      } else if (q.pipelined) {
+        getEdgesAsyncPipelined(q, deadlineTs)
       } else {
         var seedEdgesFuture: Future[Seq[QueryResult]] = Future.successful(QueryResult.fromVertices(q, stepIdx = 0, q.steps.head.queryParams, q.vertices))
         for {
           (step, idx) <- q.steps.zipWithIndex
         } {
-          seedEdgesFuture = getEdgesAsyncWithRank(seedEdgesFuture, q, idx)
+          seedEdgesFuture = getEdgesAsyncWithRank(seedEdgesFuture, q, idx, deadlineTs)
         }
         seedEdgesFuture
       }
@@ -319,72 +525,209 @@ object Graph {
   }
 
 
-  private def fetchEdgesLs(currentStepRequestLss: Seq[(Iterable[(GetRequest, QueryParam)], Double)], q: Query, stepIdx: Int): Seq[Deferred[QueryResult]] = {
-    for {
+  /**
+   * no single get may outlive the whole query budget.
+   * a sent get can not be cancelled, so this is what bounds HBase work of a timed out query.
+   */
+  private def capRpcTimeout(getRequests: Seq[GetRequest], deadlineTs: Long): Unit = {
+    if (deadlineTs != Query.noDeadline) {
+      val remaining = Math.max(1L, Query.remainingTimeInMillis(deadlineTs)).toInt
+      for (getRequest <- getRequests) {
+        getRequest.setRpcTimeout(Math.min(getRequest.rpctimeout(), remaining))
+      }
+    }
+  }
+
+  /**
+   * cache hits are served as is, and cache misses are sent to HBase as one multi-get per cluster
+   * so that gets for the same region go out in a single RPC.
+   * gets already sent ahead by pipelined traversal are taken out of prefetched instead of being sent again.
+   */
+  private def fetchEdgesLs(currentStepRequestLss: Seq[(Iterable[(GetRequest, QueryParam)], Double)], q: Query, stepIdx: Int,
+                           deadlineTs: Long,
+                           prefetched: util.Map[GetRequestKey, Deferred[ArrayList[KeyValue]]] =
+                           util.Collections.emptyMap[GetRequestKey, Deferred[ArrayList[KeyValue]]]()): Seq[Deferred[QueryResult]] = {
+    val requests = (for {
       (prevStepTgtVertexResultLs, prevScore) <- currentStepRequestLss
       (getRequest, queryParam) <- prevStepTgtVertexResultLs
     } yield {
-      //      fetchEdges(getRequest, queryParam, prevScore)
-      fetchEdgesWithCache(getRequest, q, stepIdx, queryParam, prevScore)
+      (getRequest, GetRequestKey(getRequest), queryParam, prevScore)
+    }).toIndexedSeq
+
+    capRpcTimeout(requests.map(_._1), deadlineTs)
+
+    val deferreds = new Array[Deferred[QueryResult]](requests.size)
+    val misses = ListBuffer.empty[Int]
+    for (((_, key, queryParam, prevScore), idx) <- requests.zipWithIndex) {
+      getCachedQueryResult(key, queryParam) match {
+        case Some(cachedVal) => deferreds(idx) = Deferred.fromResult(cachedVal)
+        case None =>
+          getOffHeapCachedKeyValues(key, queryParam) match {
+            case Some(kvs) =>
+              deferreds(idx) = withCachePut(key, queryParam, Deferred.fromResult(toQueryResult(kvs, queryParam, prevScore, q, stepIdx)))
+            case None =>
+              val prefetchedKvs = if (prefetched.isEmpty) null else prefetched.remove(key)
+              if (prefetchedKvs != null) deferreds(idx) = toQueryResultDeferred(prefetchedKvs, key, queryParam, prevScore, q, stepIdx, deadlineTs)
+              else misses += idx
+          }
+      }
     }
-  }
-
-
-  private def fetchEdgesWithCache(getRequest: GetRequest, q: Query, stepIdx: Int, queryParam: QueryParam, prevScore: Double): Deferred[QueryResult] = {
-    val cacheKey = MurmurHash3.stringHash(getRequest.toString)
-    def queryResultCallback(cacheKey: Int) = new Callback[QueryResult, QueryResult] {
-      def call(arg: QueryResult): QueryResult = {
-        Logger.debug(s"queryResultCachePut, $arg")
-        cache.put(cacheKey, arg)
-        arg
+    /** budget is already spent, so nothing is sent to HBase. cache hits are still served */
+    if (Query.isTimedOut(deadlineTs)) {
+      for (idx <- misses) deferreds(idx) = Deferred.fromResult(QueryResult(q, stepIdx, requests(idx)._3, isPartial = true))
+    } else {
+      for ((zkQuorum, idxs) <- misses.groupBy(idx => requests(idx)._3.label.hbaseZkAddr)) {
+        val fetched = fetchEdges(zkQuorum, idxs.map(requests), q, stepIdx, deadlineTs)
+        for ((idx, deferred) <- idxs.zip(fetched)) {
+          deferreds(idx) = deferred
+        }
       }
     }
+    deferreds
+  }
+
+  private def getCachedQueryResult(cacheKey: GetRequestKey, queryParam: QueryParam): Option[QueryResult] = {
     if (queryParam.cacheTTLInMillis > 0) {
       val cacheTTL = queryParam.cacheTTLInMillis
-      if (cache.asMap().containsKey(cacheKey)) {
-        val cachedVal = cache.asMap().get(cacheKey)
-        if (cachedVal != null && queryParam.timestamp - cachedVal.timestamp < cacheTTL) {
-          val elapsedTime = queryParam.timestamp - cachedVal.timestamp
-          Logger.debug(s"cacheHitAndValid: $cacheKey, $cacheTTL, $elapsedTime")
-          Deferred.fromResult(cachedVal)
-        }
-        else {
-          // cache.asMap().remove(cacheKey)
+      val cachedVal = cache.getIfPresent(cacheKey)
+      if (cachedVal != null && queryParam.timestamp - cachedVal.timestamp < cacheTTL) {
+        val elapsedTime = queryParam.timestamp - cachedVal.timestamp
+        Logger.debug(s"cacheHitAndValid: $cacheKey, $cacheTTL, $elapsedTime")
+        cacheStatsCounter.recordHits(1)
+        Some(cachedVal)
+      } else {
+        if (cachedVal != null) {
           Logger.debug(s"cacheHitInvalid(invalidated): $cacheKey, $cacheTTL")
-          fetchEdges(getRequest, q, stepIdx, queryParam, prevScore).addBoth(queryResultCallback(cacheKey))
+          /** only drop what we saw, a fresh result may have been put meanwhile */
+          if (cache.asMap().remove(cacheKey, cachedVal)) cacheStatsCounter.recordEviction()
+        } else {
+          Logger.debug(s"cacheMiss: $cacheKey")
         }
-      } else {
-        Logger.debug(s"cacheMiss: $cacheKey")
-        fetchEdges(getRequest, q, stepIdx, queryParam, prevScore).addBoth(queryResultCallback(cacheKey))
+        cacheStatsCounter.recordMisses(1)
+        None
       }
     } else {
       Logger.debug(s"cacheMiss(no cacheTTL in QueryParam): $cacheKey")
-      fetchEdges(getRequest, q, stepIdx, queryParam, prevScore)
+      None
+    }
+  }
+
+  private def getOffHeapCachedKeyValues(cacheKey: GetRequestKey, queryParam: QueryParam): Option[ArrayList[KeyValue]] = {
+    if (queryParam.cacheTTLInMillis > 0) {
+      offHeapCache.flatMap(_.get(cacheKey, queryParam.cacheTTLInMillis, queryParam.timestamp))
+    } else {
+      None
+    }
+  }
+
+  private def withOffHeapCachePut(cacheKey: GetRequestKey, queryParam: QueryParam, deferred: Deferred[ArrayList[KeyValue]]): Deferred[ArrayList[KeyValue]] = {
+    offHeapCache match {
+      case Some(offHeap) if queryParam.cacheTTLInMillis > 0 =>
+        deferred.addCallback(new Callback[ArrayList[KeyValue], ArrayList[KeyValue]] {
+          def call(kvs: ArrayList[KeyValue]): ArrayList[KeyValue] = {
+            offHeap.put(cacheKey, kvs, System.currentTimeMillis())
+            kvs
+          }
+        })
+      case _ => deferred
+    }
+  }
+
+  private def toQueryResult(kvs: Seq[KeyValue], queryParam: QueryParam, prevScore: Double, q: Query, stepIdx: Int): QueryResult = {
+    val edgeWithScores = Edge.toEdges(kvs, queryParam, prevScore, isSnapshotEdge = false)
+    QueryResult(q, stepIdx, queryParam, new ArrayList(edgeWithScores))
+  }
+
+  private def withCachePut(cacheKey: GetRequestKey, queryParam: QueryParam, deferred: Deferred[QueryResult]): Deferred[QueryResult] = {
+    if (queryParam.cacheTTLInMillis > 0) {
+      val startNanos = System.nanoTime()
+      deferred.addBoth(new Callback[QueryResult, QueryResult] {
+        def call(arg: QueryResult): QueryResult = {
+          cacheStatsCounter.recordLoadSuccess(System.nanoTime() - startNanos)
+          /** partial result is cut by query timeout, not what HBase has */
+          if (!arg.isPartial) {
+            Logger.debug(s"queryResultCachePut, $arg")
+            cacheRowIndex.add(cacheKey.row, cacheKey)
+            cache.put(cacheKey, arg)
+          }
+          arg
+        }
+      })
+    } else {
+      deferred
     }
   }
 
-  /** actual request to HBase */
-  private def fetchEdges(getRequest: GetRequest, q: Query, stepIdx: Int, queryParam: QueryParam, prevScore: Double): Deferred[QueryResult] = {
-    //    if (!this.shouldRunFetch) Deferred.fromResult(QueryResult(q, stepIdx, queryParam))
-    //    else {
+  /**
+   * actual request to HBase. all requests are sent as one batched multi-get on the given cluster.
+   * a request identical to one already in flight is not sent again but shares the in-flight result.
+   */
+  private def fetchKeyValues(zkQuorum: String, requests: Seq[(GetRequest, GetRequestKey, QueryParam)]): Seq[Deferred[ArrayList[KeyValue]]] = {
+    val kvsDeferreds = new Array[Deferred[ArrayList[KeyValue]]](requests.size)
+    val leads = ListBuffer.empty[(Int, SingleFlight.Flight[GetRequestKey, ArrayList[KeyValue]])]
+    for (((_, key, _), idx) <- requests.zipWithIndex) {
+      inFlightFetches.join(key) match {
+        case Left(flight) => leads += (idx -> flight)
+        case Right(deferred) => kvsDeferreds(idx) = deferred
+      }
+    }
+    if (leads.size < requests.size) Logger.debug(s"inFlightJoined: ${requests.size - leads.size}")
+
     try {
-      val client = getClient(queryParam.label.hbaseZkAddr)
-      deferredCallbackWithFallback(client.get(getRequest))({ kvs =>
-        //          val edgeWithScores = for {
-        //            kv <- kvs
-        //            edge <- Edge.toEdge(kv, queryParam)
-        //          } yield {
-        //              (edge, edge.rank(queryParam.rank) * prevScore)
-        //            }
-        val edgeWithScores = Edge.toEdges(kvs, queryParam, prevScore, isSnapshotEdge = false)
-        QueryResult(q, stepIdx, queryParam, new ArrayList(edgeWithScores))
-      }, QueryResult(q, stepIdx, queryParam))
+      val client = getClient(zkQuorum)
+      val sent = client.get(seqAsJavaList(leads.map { case (idx, _) => requests(idx)._1 }))
+      for (((idx, flight), deferred) <- leads.zip(sent)) {
+        kvsDeferreds(idx) = flight.lead(withOffHeapCachePut(requests(idx)._2, requests(idx)._3, deferred))
+      }
     } catch {
-      case e@(_: Throwable | _: Exception) =>
+      case e: Exception =>
         Logger.error(s"Exception: $e", e)
-        Deferred.fromResult(QueryResult(q, stepIdx, queryParam))
+        for ((idx, flight) <- leads) {
+          flight.abort(e)
+          kvsDeferreds(idx) = Deferred.fromError[ArrayList[KeyValue]](e)
+        }
+    }
+    kvsDeferreds
+  }
+
+  private def toQueryResultDeferred(kvsDeferred: Deferred[ArrayList[KeyValue]], key: GetRequestKey, queryParam: QueryParam,
+                                    prevScore: Double, q: Query, stepIdx: Int, deadlineTs: Long): Deferred[QueryResult] = {
+    val deferred = deferredCallbackWithFallback(kvsDeferred)({ kvs =>
+      /** query already gave up on this result, do not decode it */
+      if (Query.isTimedOut(deadlineTs)) QueryResult(q, stepIdx, queryParam, isPartial = true)
+      else toQueryResult(kvs, queryParam, prevScore, q, stepIdx)
+    }, QueryResult(q, stepIdx, queryParam, isPartial = Query.isTimedOut(deadlineTs)))
+    withCachePut(key, queryParam, deferred)
+  }
+
+  private def fetchEdges(zkQuorum: String, requests: Seq[(GetRequest, GetRequestKey, QueryParam, Double)], q: Query, stepIdx: Int,
+                         deadlineTs: Long): Seq[Deferred[QueryResult]] = {
+    val kvsDeferreds = fetchKeyValues(zkQuorum, requests.map { case (getRequest, key, queryParam, _) => (getRequest, key, queryParam) })
+    for (((_, key, queryParam, prevScore), kvsDeferred) <- requests.zip(kvsDeferreds)) yield {
+      toQueryResultDeferred(kvsDeferred, key, queryParam, prevScore, q, stepIdx, deadlineTs)
+    }
+  }
+
+  /**
+   * sends gets of vertices ahead, before their step is built. fetchEdgesLs of that step takes them out of prefetched.
+   * vertices whose result is already cached are not sent, and nothing is sent once query is timed out.
+   */
+  private def prefetchEdges(vertices: Seq[Vertex], queryParams: List[QueryParam], deadlineTs: Long,
+                            prefetched: util.concurrent.ConcurrentHashMap[GetRequestKey, Deferred[ArrayList[KeyValue]]]): Unit = {
+    val requests = if (Query.isTimedOut(deadlineTs)) Nil else for {
+      (getsWithQueryParams, _) <- buildGetRequests(vertices.map(_ -> Query.initialScore), queryParams)
+      (getRequest, queryParam) <- getsWithQueryParams
+      key = GetRequestKey(getRequest)
+      if !prefetched.containsKey(key) && (queryParam.cacheTTLInMillis <= 0 || cache.getIfPresent(key) == null)
+    } yield {
+      (getRequest, key, queryParam)
+    }
+    capRpcTimeout(requests.map(_._1), deadlineTs)
+    for ((zkQuorum, requestsOnCluster) <- requests.groupBy(_._3.label.hbaseZkAddr)) {
+      for (((_, key, _), kvsDeferred) <- requestsOnCluster.zip(fetchKeyValues(zkQuorum, requestsOnCluster))) {
+        prefetched.putIfAbsent(key, kvsDeferred)
+      }
     }
-    //    }
   }
 
   private def alreadyVisitedVertices(queryResultLs: Seq[QueryResult]) = {
@@ -399,36 +742,16 @@ object Graph {
 
   private def getEdgesAsyncWithRank(queryResultsLs: Seq[QueryResult],
                                     q: Query,
-                                    stepIdx: Int): Future[Seq[QueryResult]] = {
+                                    stepIdx: Int,
+                                    deadlineTs: Long): Future[Seq[QueryResult]] = {
     implicit val ex = executionContext
 
-    val prevStepOpt = if (stepIdx > 0) Option(q.steps(stepIdx - 1)) else None
-    val prevStepThreshold = prevStepOpt.map(_.nextStepScoreThreshold).getOrElse(0.0)
-    val prevStepLimit = prevStepOpt.map(_.nextStepLimit).getOrElse(-1)
     val step = q.steps(stepIdx)
     val alreadyVisited =
       if (stepIdx == 0) Map.empty[(LabelWithDirection, Vertex), Boolean]
       else alreadyVisitedVertices(queryResultsLs)
 
-    //TODO:
-    val groupedBy = queryResultsLs.flatMap { queryResult =>
-      queryResult.edgeWithScoreLs.map { case (edge, score) =>
-        (edge.tgtVertex -> score)
-      }
-    }.groupBy { case (vertex, score) =>
-      vertex.id.toString
-    }
-    val groupedByFiltered = for {
-      (vertexId, edgesWithScore) <- groupedBy
-      aggregatedScore = edgesWithScore.map(_._2).sum if aggregatedScore >= prevStepThreshold
-    } yield {
-        (edgesWithScore.head._1 -> aggregatedScore)
-    }
-    val nextStepSrcVertices = if (prevStepLimit >= 0) {
-      groupedByFiltered.toSeq.sortBy(-1 * _._2).take(prevStepLimit)
-    } else {
-      groupedByFiltered.toSeq
-    }
+    val nextStepSrcVertices = stepSrcVertices(queryResultsLs, q, stepIdx)
 //    val nextStepSrcVertices = (for {
 //      queryResult <- queryResultsLs
 //      (edge, score) <- queryResult.edgeWithScoreLs
@@ -451,24 +774,155 @@ object Graph {
       getsWithQueryParams.map { case (get, queryParam) => queryParam }
     }
     val fallback = new util.ArrayList(queryParams.map(param => QueryResult(q, stepIdx, param)))
-    val deffered = fetchEdgesLs(currentStepRequestLss, q, stepIdx)
-    val grouped: Deferred[util.ArrayList[QueryResult]] = Deferred.group(deffered)
+    val deffered = fetchEdgesLs(currentStepRequestLss, q, stepIdx, deadlineTs)
+
+    filterEdges(collectWithinDeadline(deffered, fallback, q, deadlineTs), q, stepIdx, alreadyVisited)
+  }
+
+  /** source vertices of stepIdx out of previous step results, with scores summed and cut by previous step threshold and limit. */
+  private def stepSrcVertices(queryResultsLs: Seq[QueryResult], q: Query, stepIdx: Int): Seq[(Vertex, Double)] = {
+    val prevStepOpt = if (stepIdx > 0) Option(q.steps(stepIdx - 1)) else None
+    val prevStepThreshold = prevStepOpt.map(_.nextStepScoreThreshold).getOrElse(0.0)
+    val prevStepLimit = prevStepOpt.map(_.nextStepLimit).getOrElse(-1)
+
+    val frontier = new Frontier(queryResultsLs.foldLeft(0)(_ + _.edgeWithScoreLs.size))
+    for {
+      queryResult <- queryResultsLs
+      (edge, score) <- queryResult.edgeWithScoreLs
+    } frontier.add(edge.tgtVertex, score)
+    val groupedByFiltered = frontier.vertexWithScores(prevStepThreshold)
+    if (prevStepLimit >= 0) {
+      TopK.byScore(groupedByFiltered, prevStepLimit)
+    } else {
+      groupedByFiltered.toSeq
+    }
+  }
 
-    filterEdges(defferedToFuture(grouped)(fallback), q, stepIdx, alreadyVisited)
+  /**
+   * waits on deferreds only until deadlineTs.
+   * results still in flight at the deadline are replaced by their fallback marked as partial,
+   * and dropped when they arrive later.
+   */
+  private def collectWithinDeadline(deferreds: Seq[Deferred[QueryResult]], fallbacks: Seq[QueryResult], q: Query,
+                                    deadlineTs: Long): Future[ArrayList[QueryResult]] = {
+    val futures = deferreds.zip(fallbacks).map { case (deferred, fallback) => defferedToFuture(deferred)(fallback) }
+    collectFuturesWithinDeadline(futures, fallbacks, q, deadlineTs)
   }
 
-  def getEdgesAsyncWithRank(queryResultLsFuture: Future[Seq[QueryResult]], q: Query, stepIdx: Int): Future[Seq[QueryResult]] = {
+  /** one timer for all futures, in their given order whichever completes first. */
+  private def collectFuturesWithinDeadline(futures: Seq[Future[QueryResult]], fallbacks: Seq[QueryResult], q: Query,
+                                           deadlineTs: Long): Future[ArrayList[QueryResult]] = {
+    implicit val ex = executionContext
+    val all = Future.sequence(futures).map(results => new ArrayList[QueryResult](results))
+    if (deadlineTs == Query.noDeadline) all
+    else {
+      val promise = Promise[ArrayList[QueryResult]]
+      val timeout = timer.newTimeout(new TimerTask {
+        def run(timeout: Timeout): Unit = {
+          val collected = for {
+            (future, fallback) <- futures.zip(fallbacks)
+          } yield {
+            future.value.flatMap(_.toOption).getOrElse(fallback.copy(isPartial = true))
+          }
+          if (promise.trySuccess(new ArrayList[QueryResult](collected))) {
+            Logger.info(s"query deadline exceeded: ${q.timeoutInMillis}ms, ${q.templateId()}")
+          }
+        }
+      }, Math.max(0L, Query.remainingTimeInMillis(deadlineTs)), TimeUnit.MILLISECONDS)
+      /** no-op once deadline completed promise */
+      all.onComplete { ret =>
+        timeout.cancel()
+        promise.tryComplete(ret)
+      }
+      promise.future
+    }
+  }
+
+  /** what query returns when its time budget runs out before stepIdx starts. */
+  private def timedOutResults(queryResultLs: Seq[QueryResult], q: Query, stepIdx: Int): Seq[QueryResult] = {
+    Logger.info(s"query deadline exceeded before step $stepIdx: ${q.timeoutInMillis}ms, ${q.templateId()}")
+    if (stepIdx == 0) Seq(QueryResult.partial(q, stepIdx))
+    else queryResultLs.map(_.copy(isPartial = true))
+  }
+
+  def getEdgesAsyncWithRank(queryResultLsFuture: Future[Seq[QueryResult]], q: Query, stepIdx: Int, deadlineTs: Long): Future[Seq[QueryResult]] = {
     implicit val ex = executionContext
     for {
       queryResultLs <- queryResultLsFuture
       //      (queryParam, edgeWithScoreLs) <- srcEdges
       // prevStep: (QueryParam, Seq[(Edge, Double)]), q: Query, stepIdx: Int): Future[Seq[(QueryParam, Iterable[(Edge, Double)])]] = {
-      ret <- getEdgesAsyncWithRank(queryResultLs, q, stepIdx)
+      ret <- if (Query.isTimedOut(deadlineTs)) Future.successful(timedOutResults(queryResultLs, q, stepIdx))
+      else getEdgesAsyncWithRank(queryResultLs, q, stepIdx, deadlineTs)
     } yield {
       ret
     }
   }
 
+  /**
+   * pipelined traversal. every step returns the same results as getEdgesAsync, but while results of step N are
+   * still arriving, each of them is filtered on its own and fed into a running aggregated top k of step N + 1
+   * source vertices. vertices entering that top k get their step N + 1 gets sent ahead, so most of step N + 1 is
+   * already in flight when step N completes. step N + 1 is still built out of the whole step N, so results do not
+   * depend on arrival order, and only gets of vertices that later fall out of top k are wasted.
+   *
+   * a step with exclude/include query params decides them across all of its results, so it is not pipelined.
+   */
+  def getEdgesAsyncPipelined(q: Query, deadlineTs: Long): Future[Seq[QueryResult]] = {
+    val seeds = QueryResult.fromVertices(q, stepIdx = 0, q.steps.head.queryParams, q.vertices)
+    if (Query.isTimedOut(deadlineTs)) Future.successful(timedOutResults(seeds, q, 0))
+    else getEdgesAsyncPipelined(seeds, q, 0, deadlineTs, new util.concurrent.ConcurrentHashMap[GetRequestKey, Deferred[ArrayList[KeyValue]]]())
+  }
+
+  private def getEdgesAsyncPipelined(queryResultsLs: Seq[QueryResult],
+                                     q: Query,
+                                     stepIdx: Int,
+                                     deadlineTs: Long,
+                                     prefetched: util.concurrent.ConcurrentHashMap[GetRequestKey, Deferred[ArrayList[KeyValue]]]): Future[Seq[QueryResult]] = {
+    implicit val ex = executionContext
+
+    val step = q.steps(stepIdx)
+    val nextStepOpt = if (stepIdx < q.steps.size - 1) Option(q.steps(stepIdx + 1)) else None
+
+    val currentStepRequestLss = buildGetRequests(stepSrcVertices(queryResultsLs, q, stepIdx), step.queryParams)
+    val queryParams = currentStepRequestLss.flatMap { case (getsWithQueryParams, prevScore) =>
+      getsWithQueryParams.map { case (get, queryParam) => queryParam }
+    }
+    val fallbacks = queryParams.map(param => QueryResult(q, stepIdx, param))
+    val deferreds = fetchEdgesLs(currentStepRequestLss, q, stepIdx, deadlineTs, prefetched)
+    val nextPrefetched = new util.concurrent.ConcurrentHashMap[GetRequestKey, Deferred[ArrayList[KeyValue]]]()
+
+    val filtered = nextStepOpt match {
+      case Some(nextStep) if !step.queryParams.exists(queryParam => queryParam.exclude || queryParam.include) =>
+        val running = new RunningTopK(step.nextStepScoreThreshold, step.nextStepLimit)
+        val futures = for {
+          (deferred, fallback) <- deferreds.zip(fallbacks)
+        } yield {
+          val queryResultLs = defferedToFuture(deferred)(fallback).map { queryResult =>
+            val ls = new ArrayList[QueryResult](1)
+            ls.add(queryResult)
+            ls
+          }
+          filterEdges(queryResultLs, q, stepIdx).map { filteredLs =>
+            val queryResult = filteredLs.head
+            if (!Query.isTimedOut(deadlineTs)) {
+              val entered = running.add(queryResult.edgeWithScoreLs.map { case (edge, score) => edge.tgtVertex -> score }.toSeq)
+              if (entered.nonEmpty) prefetchEdges(entered, nextStep.queryParams, deadlineTs, nextPrefetched)
+            }
+            queryResult
+          }
+        }
+        collectFuturesWithinDeadline(futures, fallbacks, q, deadlineTs).map(_.toSeq)
+      case _ =>
+        filterEdges(collectWithinDeadline(deferreds, fallbacks, q, deadlineTs), q, stepIdx)
+    }
+
+    if (nextStepOpt.isEmpty) filtered
+    else filtered.flatMap { queryResults =>
+      if (Query.isTimedOut(deadlineTs)) Future.successful(timedOutResults(queryResults, q, stepIdx + 1))
+      else getEdgesAsyncPipelined(queryResults, q, stepIdx + 1, deadlineTs, nextPrefetched)
+    }
+  }
+
   def getEdge(srcVertex: Vertex, tgtVertex: Vertex, queryParam: QueryParam): Future[QueryResult] = {
     implicit val ex = this.executionContext
 
@@ -478,7 +932,10 @@ object Graph {
       .buildGetRequest(invertedEdge.srcVertex)
     val q = Query.toQuery(Seq(srcVertex), queryParam)
 
-    defferedToFuture(getClient(queryParam.label.hbaseZkAddr).get(getRequest))(emptyKVs).map { kvs =>
+    val zkQuorum = queryParam.label.hbaseZkAddr
+    /** snapshot edge get is the first rpc of every strong consistency mutation */
+    val deferred = withInFlightTracking(zkQuorum, getRequest)(getClient(zkQuorum).get(getRequest))
+    defferedToFuture(deferred)(emptyKVs).map { kvs =>
       //      val edgeWithScoreLs = for {
       //        kv <- kvs
       //        edge <- Edge.toEdge(kv, queryParam)
@@ -536,15 +993,44 @@ object Graph {
 //    }
 //  }
 
-  type HashKey = (Int, Int, Int, Int)
-  type FilterHashKey = (Int, Int)
-
-  def toHashKey(queryParam: QueryParam, edge: Edge): (HashKey, FilterHashKey) = {
+  /**
+   * packs (src, tgt) hashes of edge into one long.
+   * every edge in one QueryResult shares label and direction of its QueryParam,
+   * so this alone identifies an edge within the QueryResult, and across QueryResults it is the include/exclude key.
+   */
+  def toHashKey(queryParam: QueryParam, edge: Edge): Long = {
     val src = edge.srcVertex.innerId.hashKey(queryParam.srcColumnWithDir.columnType)
     val tgt = edge.tgtVertex.innerId.hashKey(queryParam.tgtColumnWithDir.columnType)
-    val hashKey = (src, edge.labelWithDir.labelId, edge.labelWithDir.dir, tgt)
-    val filterHashKey = (src, tgt)
-    (hashKey, filterHashKey)
+    LongIntOpenHashMap.pack(src, tgt)
+  }
+
+  /** aggregation state of filterEdges for one QueryResult. slots are assigned in first seen order. */
+  private final class ScoredEdges(expectedSize: Int) {
+    val slots = new LongIntOpenHashMap(expectedSize)
+    val edges = new ArrayList[Edge](expectedSize)
+    var keys = new Array[Long](Math.max(expectedSize, 1))
+    var scores = new Array[Double](Math.max(expectedSize, 1))
+    /** only used for DuplicatePolicy.Raw */
+    var duplicates: HashMap[Int, ListBuffer[(Edge, Double)]] = null
+
+    def size: Int = edges.size
+
+    def add(hashKey: Long, edge: Edge, score: Double): Unit = {
+      val slot = edges.size
+      if (slot == keys.length) {
+        keys = util.Arrays.copyOf(keys, slot * 2)
+        scores = util.Arrays.copyOf(scores, slot * 2)
+      }
+      slots.put(hashKey, slot)
+      keys(slot) = hashKey
+      scores(slot) = score
+      edges.add(edge)
+    }
+
+    def addDuplicate(slot: Int, edge: Edge, score: Double): Unit = {
+      if (duplicates == null) duplicates = HashMap.empty[Int, ListBuffer[(Edge, Double)]]
+      duplicates.getOrElseUpdate(slot, ListBuffer.empty[(Edge, Double)]) += (edge -> score)
+    }
   }
 
   def filterEdges(queryResultLsFuture: Future[ArrayList[QueryResult]],
@@ -558,89 +1044,92 @@ object Graph {
 
       val nextStepOpt = if (stepIdx < q.steps.size - 1) Option(q.steps(stepIdx + 1)) else None
 
-//      val labelOutputFields = step.queryParams.map { qParam =>
-//        qParam.labelWithDir.labelId -> qParam.outputFields
-//      }.toMap
-
       val excludeLabelWithDirSet = step.queryParams.filter(_.exclude).map(l => l.labelWithDir.labelId -> l.labelWithDir.dir).toSet
       val includeLabelWithDirSet = step.queryParams.filter(_.include).map(l => l.labelWithDir.labelId -> l.labelWithDir.dir).toSet
 
-
-
-      val edgesToExclude = new util.concurrent.ConcurrentHashMap[FilterHashKey, Boolean]()
-      val edgesToInclude = new util.concurrent.ConcurrentHashMap[FilterHashKey, Boolean]()
+      val edgesToExclude = new LongIntOpenHashMap()
+      val edgesToInclude = new LongIntOpenHashMap()
 
       val queryParamResultLs = for {
         queryResult <- queryResultLs
       } yield {
-          val duplicateEdges = new util.concurrent.ConcurrentHashMap[HashKey, ListBuffer[(Edge, Double)]]()
-          val resultEdgeWithScores = new util.concurrent.ConcurrentHashMap[HashKey, (HashKey, FilterHashKey, Edge, Double)]()
-          val labelWeight = step.labelWeights.get(queryResult.queryParam.labelWithDir.labelId).getOrElse(1.0)
+          val queryParam = queryResult.queryParam
+          val scoredEdges = new ScoredEdges(queryResult.edgeWithScoreLs.size)
+          val labelWeight = step.labelWeights.get(queryParam.labelWithDir.labelId).getOrElse(1.0)
+          val filterKey = queryParam.labelWithDir.labelId -> queryParam.labelWithDir.dir
+          val isExcludeLabel = excludeLabelWithDirSet.contains(filterKey)
+          val isIncludeLabel = includeLabelWithDirSet.contains(filterKey)
           for {
             (edge, score) <- queryResult.edgeWithScoreLs
-//            outputFields <- labelOutputFields.get(edge.labelWithDir.labelId)
-            convertedEdge <- convertEdges(queryResult.queryParam, edge, nextStepOpt)
-//            convertedEdge <- convertEdges(edge, labelOutputFields(edge.labelWithDir.labelId))
-            (hashKey, filterHashKey) = toHashKey(queryResult.queryParam, convertedEdge)
+            convertedEdge <- convertEdges(queryParam, edge, nextStepOpt)
           } {
+            val hashKey = toHashKey(queryParam, convertedEdge)
+            val isDegreeEdge = edge.propsWithTs.containsKey(LabelMeta.degreeSeq)
             /** check if this edge should be exlcuded. */
-            val filterKey = edge.labelWithDir.labelId -> edge.labelWithDir.dir
-            if (excludeLabelWithDirSet.contains(filterKey) && !edge.propsWithTs.containsKey(LabelMeta.degreeSeq)) {
-              edgesToExclude.put(filterHashKey, true)
+            if (isExcludeLabel && !isDegreeEdge) {
+              edgesToExclude.put(hashKey, 1)
             } else {
               /** include should be aggregated into score */
-              if (includeLabelWithDirSet.contains(filterKey) && !edge.propsWithTs.containsKey(LabelMeta.degreeSeq)) {
-                edgesToInclude.put(filterHashKey, true)
+              if (isIncludeLabel && !isDegreeEdge) {
+                edgesToInclude.put(hashKey, 1)
               }
               /** process time decay */
-              val tsVal = queryResult.queryParam.timeDecay match {
+              val tsVal = queryParam.timeDecay match {
                 case None => 1.0
                 case Some(timeDecay) =>
-                  val timeDiff = queryResult.queryParam.timestamp - edge.ts
+                  val timeDiff = queryParam.timestamp - edge.ts
                   timeDecay.decay(timeDiff)
               }
 
               val newScore = labelWeight * score * tsVal
 
               /** aggregate score into result. note that this is only aggregate in queryParam scope */
-              if (resultEdgeWithScores.containsKey(hashKey)) {
-                val (oldHashKey, oldFilterHashKey, oldEdge, oldScore) = resultEdgeWithScores.get(hashKey)
-                //TODO:
-                queryResult.queryParam.duplicatePolicy match {
+              val slot = scoredEdges.slots.getOrElse(hashKey, -1)
+              if (slot >= 0) {
+                queryParam.duplicatePolicy match {
                   case Query.DuplicatePolicy.First => // do nothing
-                  case Query.DuplicatePolicy.Raw =>
-                    if (duplicateEdges.containsKey(hashKey)) {
-                      duplicateEdges.get(hashKey) += (convertedEdge -> newScore)
-                    } else {
-                      val newBuffer = new ListBuffer[(Edge, Double)]
-                      newBuffer += (convertedEdge -> newScore)
-                      duplicateEdges.put(hashKey, newBuffer)
-                    }
-                  case Query.DuplicatePolicy.CountSum =>
-                    resultEdgeWithScores.put(hashKey, (hashKey, filterHashKey, oldEdge, oldScore + 1))
-                  case _ =>
-                    resultEdgeWithScores.put(hashKey, (hashKey, filterHashKey, oldEdge, oldScore + newScore))
+                  case Query.DuplicatePolicy.Raw => scoredEdges.addDuplicate(slot, convertedEdge, newScore)
+                  case Query.DuplicatePolicy.CountSum => scoredEdges.scores(slot) += 1
+                  case _ => scoredEdges.scores(slot) += newScore
                 }
               } else {
-                resultEdgeWithScores.put(hashKey, (hashKey, filterHashKey, convertedEdge, newScore))
+                scoredEdges.add(hashKey, convertedEdge, newScore)
               }
             }
           }
-          (duplicateEdges, resultEdgeWithScores)
+          scoredEdges
         }
 
       val aggregatedResults = for {
-        (queryResult, queryParamResult) <- queryResultLs.zip(queryParamResultLs)
-        (duplicateEdges, resultEdgeWithScores) = queryParamResult
+        (queryResult, scoredEdges) <- queryResultLs.zip(queryParamResultLs)
       } yield {
-        val edgesWithScores = for {
-          (hashKey, filterHashKey, edge, score) <- resultEdgeWithScores.values
-          if edgesToInclude.containsKey(filterHashKey) || !edgesToExclude.containsKey(filterHashKey)
-          (duplicateEdge, aggregatedScore) <- (edge -> score) +: (if (duplicateEdges.containsKey(hashKey)) duplicateEdges.get(hashKey) else Seq.empty)
-          if aggregatedScore >= queryResult.queryParam.threshold
-        } yield (duplicateEdge, aggregatedScore)
+        val threshold = queryResult.queryParam.threshold
+        val edgesWithScores = new ArrayList[(Edge, Double)](scoredEdges.size)
+        var slot = 0
+        while (slot < scoredEdges.size) {
+          val hashKey = scoredEdges.keys(slot)
+          if (edgesToInclude.contains(hashKey) || edgesToExclude.isEmpty || !edgesToExclude.contains(hashKey)) {
+            val score = scoredEdges.scores(slot)
+            if (score >= threshold) edgesWithScores.add(scoredEdges.edges.get(slot) -> score)
+            if (scoredEdges.duplicates != null) {
+              for {
+                duplicates <- scoredEdges.duplicates.get(slot)
+                (duplicateEdge, duplicateScore) <- duplicates if duplicateScore >= threshold
+              } edgesWithScores.add(duplicateEdge -> duplicateScore)
+            }
+          }
+          slot += 1
+        }
+        /** transformers and raw duplicates can yield more than limit, keep best scored ones. degree edges always stay. */
+        val limit = queryResult.queryParam.resultLimit
+        val limitedEdgesWithScores: Iterable[(Edge, Double)] =
+          if (limit < 0 || edgesWithScores.size <= limit) edgesWithScores
+          else {
+            val (degreeEdges, edges) = edgesWithScores.partition { case (edge, _) => edge.propsWithTs.containsKey(LabelMeta.degreeSeq) }
+            degreeEdges ++ TopK.byScore(edges, limit)
+          }
 
-        QueryResult(queryResult.query, queryResult.stepIdx, queryResult.queryParam, edgesWithScores)
+        QueryResult(queryResult.query, queryResult.stepIdx, queryResult.queryParam, limitedEdgesWithScores, isPartial = queryResult.isPartial)
       }
       aggregatedResults
     }
@@ -680,46 +1169,107 @@ object Graph {
    * Vertex
    */
 
+  private def vertexCacheKey(vertex: Vertex): GetRequestKey = GetRequestKey(vertex.buildGet)
+
+  /** cached vertex, or cached absence of vertex(None) while younger than vertex.cache.negative.ttl.seconds */
+  private def getCachedVertex(cacheKey: GetRequestKey, now: Long): Option[Option[Vertex]] = {
+    val cachedVal = vertexCache.getIfPresent(cacheKey)
+    if (cachedVal == null) None
+    else if (cachedVal.vertexOpt.isEmpty && now - cachedVal.timestamp >= vertexCacheNegativeTTLInMillis) {
+      vertexCache.asMap().remove(cacheKey, cachedVal)
+      None
+    } else {
+      Some(cachedVal.vertexOpt)
+    }
+  }
+
+  def invalidateVertexCache(vertex: Vertex): Unit = vertexCache.invalidate(vertexCacheKey(vertex))
+
+  /**
+   * cached vertices(and cached misses) are served as is.
+   * the rest are fetched as one multi-get per cluster and cached.
+   */
   def getVerticesAsync(vertices: Seq[Vertex]): Future[Seq[Vertex]] = {
     implicit val ex = executionContext
 
-    val futures = vertices.map { vertex =>
-      val client = getClient(vertex.hbaseZkAddr)
+    val vertexLs = vertices.toIndexedSeq
+    val now = System.currentTimeMillis()
+    val results = new Array[Future[Option[Vertex]]](vertexLs.size)
+    val misses = ListBuffer.empty[(Int, GetRequest, GetRequestKey)]
+    for ((vertex, idx) <- vertexLs.zipWithIndex) {
       val get = vertex.buildGet
       get.setRpcTimeout(this.singleGetTimeout.toShort)
       get.setFailfast(true)
+      val cacheKey = GetRequestKey(get)
+      getCachedVertex(cacheKey, now) match {
+        case Some(cachedVal) => results(idx) = Future.successful(cachedVal)
+        case None => misses += ((idx, get, cacheKey))
+      }
+    }
+    Logger.debug(s"getVerticesAsync: ${vertexLs.size} vertices, ${misses.size} misses")
 
-      val cacheKey = MurmurHash3.stringHash(get.toString)
-      //FIXME
-      val cacheTTL = 10000
-      if (vertexCache.asMap().containsKey(cacheKey)) {
-        val cachedVal = vertexCache.asMap().get(cacheKey)
-        if (cachedVal == null) {
-          defferedToFuture(client.get(get))(emptyKVs).map { kvs =>
-            Vertex(kvs, vertex.serviceColumn.schemaVersion)
+    for ((zkQuorum, zkMisses) <- misses.groupBy { case (idx, _, _) => vertexLs(idx).hbaseZkAddr }) {
+      val client = getClient(zkQuorum)
+      val deferreds = client.get(seqAsJavaList(zkMisses.map(_._2)))
+      for (((idx, _, cacheKey), deferred) <- zkMisses.zip(deferreds)) {
+        val vertex = vertexLs(idx)
+        results(idx) = defferedToFuture(deferred)(null).map { kvs =>
+          if (kvs == null) None
+          else {
+            val vertexOpt = Vertex(kvs, vertex.serviceColumn.schemaVersion)
+            vertexCache.put(cacheKey, CachedVertex(vertexOpt, now))
+            vertexOpt
           }
-        } else {
-          Future.successful(cachedVal)
-        }
-      } else {
-        defferedToFuture(client.get(get))(emptyKVs).map { kvs =>
-          Vertex(kvs, vertex.serviceColumn.schemaVersion)
         }
       }
     }
-    Future.sequence(futures).map { result => result.toList.flatten }
+    Future.sequence(results.toSeq).map { result => result.toList.flatten }
+  }
+
+  /** completes once edge is written, including compare and set of strong consistency. */
+  private def writeEdge(edge: Edge): Future[Boolean] = {
+    implicit val ex = this.executionContext
+    val zkQuorum = edge.label.hbaseZkAddr
+    val written =
+      if (!isFireAndForget(edge.label)) writeAsyncWithAck(zkQuorum, Seq(edge -> edge.buildPutsAll()))
+      else groupCommit match {
+        case Some(committer) => committer.submit(zkQuorum, edge.buildPutsAll()).map(Seq(_))
+        case None => writeAsync(zkQuorum, Seq(edge).map(e => e.buildPutsAll()))
+      }
+    written.map(rets => rets.forall(identity))
   }
 
   def mutateEdge(edge: Edge): Future[Boolean] = {
     implicit val ex = this.executionContext
-    writeAsync(edge.label.hbaseZkAddr, Seq(edge).map(e => e.buildPutsAll())).map { rets =>
-      rets.forall(identity)
-    }
+    val written = writeEdge(edge)
+    val mutated = edge.mutateAsync()
+    for {
+      ret <- written
+      mutatedRet <- mutated
+    } yield ret && mutatedRet
   }
 
+  /**
+   * acknowledged edges on same cluster are written in one writeAsyncWithAck,
+   * so degree increments of a batch are coalesced per cell.
+   */
   def mutateEdges(edges: Seq[Edge]): Future[Seq[Boolean]] = {
     implicit val ex = this.executionContext
-    val futures = edges.map { edge => mutateEdge(edge) }
+    val written = new Array[Future[Boolean]](edges.size)
+    val (acked, others) = edges.zipWithIndex.partition { case (edge, idx) => !isFireAndForget(edge.label) }
+    for ((zkQuorum, group) <- acked.groupBy { case (edge, idx) => edge.label.hbaseZkAddr }) {
+      val rets = writeAsyncWithAck(zkQuorum, group.map { case (edge, idx) => edge -> edge.buildPutsAll() })
+      for (((edge, idx), i) <- group.zipWithIndex) written(idx) = rets.map(_(i))
+    }
+    for ((edge, idx) <- others) written(idx) = writeEdge(edge)
+
+    val futures = edges.zipWithIndex.map { case (edge, idx) =>
+      val mutated = edge.mutateAsync()
+      for {
+        ret <- written(idx)
+        mutatedRet <- mutated
+      } yield ret && mutatedRet
+    }
     Future.sequence(futures)
   }
 
@@ -735,7 +1285,10 @@ object Graph {
       }
       Future.successful(true)
     } else {
+      invalidateVertexCache(vertex)
       writeAsync(vertex.hbaseZkAddr, Seq(vertex).map(v => v.buildPutsAll())).map { rets =>
+        /** a read in between may have cached the old vertex again */
+        invalidateVertexCache(vertex)
         rets.forall(identity)
       }
     }
@@ -749,7 +1302,9 @@ object Graph {
 
   private def deleteVertex(vertex: Vertex): Future[Boolean] = {
     implicit val ex = this.executionContext
+    invalidateVertexCache(vertex)
     writeAsync(vertex.hbaseZkAddr, Seq(vertex).map(_.buildDeleteAsync())).map { rets =>
+      invalidateVertexCache(vertex)
       rets.forall(identity)
     }
   }
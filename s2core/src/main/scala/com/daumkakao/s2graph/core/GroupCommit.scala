@@ -0,0 +1,173 @@
+package com.daumkakao.s2graph.core
+
+import java.nio.ByteBuffer
+import java.util
+
+import org.hbase.async.{AtomicIncrementRequest, HBaseRpc, PutRequest}
+
+import scala.collection.mutable.ArrayBuffer
+import scala.concurrent.{ExecutionContext, Future, Promise}
+
+/**
+ * collects fire and forget rpcs of concurrent requests per zkQuorum for windowMillis(or until maxBatchSize rpcs),
+ * then flushes them at once after merging puts on same row into multi column puts and summing increments on same cell.
+ * every caller of a batch gets the result of its flush.
+ */
+final class GroupCommit(windowMillis: Long,
+                        maxBatchSize: Int,
+                        flush: (String, Seq[HBaseRpc]) => Future[Boolean],
+                        schedule: (Long, () => Unit) => Unit)(implicit ec: ExecutionContext) {
+
+  import GroupCommit._
+
+  private val batches = new util.HashMap[String, Batch]()
+
+  def submit(zkQuorum: String, rpcs: Seq[HBaseRpc]): Future[Boolean] = {
+    if (rpcs.isEmpty) Future.successful(true)
+    else {
+      val promise = Promise[Boolean]
+      var toFlush: Batch = null
+      var toSchedule: Batch = null
+      synchronized {
+        var batch = batches.get(zkQuorum)
+        if (batch == null) {
+          batch = new Batch
+          batches.put(zkQuorum, batch)
+          toSchedule = batch
+        }
+        batch.rpcs ++= rpcs
+        batch.promises += promise
+        if (batch.rpcs.size >= maxBatchSize) {
+          batches.remove(zkQuorum)
+          toFlush = batch
+        }
+      }
+      if (toFlush != null) run(zkQuorum, toFlush)
+      else if (toSchedule != null) {
+        val scheduled = toSchedule
+        schedule(windowMillis, () => flushIfCurrent(zkQuorum, scheduled))
+      }
+      promise.future
+    }
+  }
+
+  /** window of batch expired. it could have been flushed already for being full. */
+  private def flushIfCurrent(zkQuorum: String, batch: Batch): Unit = {
+    val current = synchronized {
+      if (batches.get(zkQuorum) eq batch) {
+        batches.remove(zkQuorum)
+        true
+      } else false
+    }
+    if (current) run(zkQuorum, batch)
+  }
+
+  private def run(zkQuorum: String, batch: Batch): Unit = {
+    val flushed = try {
+      flush(zkQuorum, merge(batch.rpcs))
+    } catch {
+      case e: Exception => Future.failed(e)
+    }
+    flushed.onComplete { result => batch.promises.foreach(_.complete(result)) }
+  }
+}
+
+object GroupCommit {
+
+  private final class Batch {
+    val rpcs = new ArrayBuffer[HBaseRpc]()
+    val promises = new ArrayBuffer[Promise[Boolean]]()
+  }
+
+  private type PutKey = (ByteBuffer, ByteBuffer, ByteBuffer, Long)
+  private type IncrementKey = (ByteBuffer, ByteBuffer, ByteBuffer, ByteBuffer)
+
+  /**
+   * puts with same table, row, family and timestamp become one put, later value wins on same qualifier.
+   * increments on same cell become one increment of summed amount.
+   * other rpcs(deletes) are kept in place and nothing is merged across them, so order against deletes holds.
+   */
+  def merge(rpcs: Seq[HBaseRpc]): Seq[HBaseRpc] = {
+    val ret = new ArrayBuffer[HBaseRpc](rpcs.size)
+    val run = new ArrayBuffer[HBaseRpc]()
+    for (rpc <- rpcs) {
+      rpc match {
+        case _: PutRequest | _: AtomicIncrementRequest => run += rpc
+        case _ =>
+          ret ++= mergeRun(run)
+          run.clear()
+          ret += rpc
+      }
+    }
+    ret ++= mergeRun(run)
+    ret
+  }
+
+  private def mergeRun(rpcs: Seq[HBaseRpc]): Seq[HBaseRpc] = {
+    if (rpcs.size <= 1) rpcs.toList
+    else {
+      /** slot of each merged rpc keeps position of its first rpc */
+      val slots = new ArrayBuffer[AnyRef](rpcs.size)
+      val puts = new util.HashMap[PutKey, util.LinkedHashMap[ByteBuffer, Array[Byte]]]()
+      val putSlots = new util.HashMap[PutKey, Integer]()
+      val increments = new util.HashMap[IncrementKey, java.lang.Long]()
+      val incrementSlots = new util.HashMap[IncrementKey, Integer]()
+
+      for (rpc <- rpcs) {
+        rpc match {
+          case put: PutRequest =>
+            val key = (ByteBuffer.wrap(put.table()), ByteBuffer.wrap(put.key()), ByteBuffer.wrap(put.family()), put.timestamp())
+            var columns = puts.get(key)
+            if (columns == null) {
+              columns = new util.LinkedHashMap[ByteBuffer, Array[Byte]]()
+              puts.put(key, columns)
+              putSlots.put(key, slots.size)
+              slots += key
+            }
+            val qualifiers = put.qualifiers()
+            val values = put.values()
+            var i = 0
+            while (i < qualifiers.length) {
+              val qualifier = ByteBuffer.wrap(qualifiers(i))
+              /** remove first so that re-put qualifier moves to the end as it was written last */
+              columns.remove(qualifier)
+              columns.put(qualifier, values(i))
+              i += 1
+            }
+          case incr: AtomicIncrementRequest =>
+            val key = (ByteBuffer.wrap(incr.table()), ByteBuffer.wrap(incr.key()),
+              ByteBuffer.wrap(incr.family()), ByteBuffer.wrap(incr.qualifier()))
+            val old = increments.get(key)
+            if (old == null) {
+              incrementSlots.put(key, slots.size)
+              slots += key
+              increments.put(key, incr.getAmount)
+            } else {
+              increments.put(key, old + incr.getAmount)
+            }
+        }
+      }
+
+      slots.map { slot =>
+        if (putSlots.containsKey(slot)) {
+          val (table, row, family, ts) = slot.asInstanceOf[PutKey]
+          val columns = puts.get(slot)
+          val qualifiers = new Array[Array[Byte]](columns.size())
+          val values = new Array[Array[Byte]](columns.size())
+          var i = 0
+          val it = columns.entrySet().iterator()
+          while (it.hasNext) {
+            val entry = it.next()
+            qualifiers(i) = entry.getKey.array()
+            values(i) = entry.getValue
+            i += 1
+          }
+          new PutRequest(table.array(), row.array(), family.array(), qualifiers, values, ts)
+        } else {
+          val (table, row, family, qualifier) = slot.asInstanceOf[IncrementKey]
+          new AtomicIncrementRequest(table.array(), row.array(), family.array(), qualifier.array(), increments.get(slot))
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,66 @@
+package com.daumkakao.s2graph.core
+
+import java.nio.ByteBuffer
+import java.util
+
+import org.hbase.async.{AtomicIncrementRequest, HBaseRpc}
+
+import scala.collection.mutable.ArrayBuffer
+
+/**
+ * sums increments on same cell across elements of a batch, so that a popular degree row gets one increment per batch.
+ * zero sums(insert and delete in same batch) are dropped.
+ */
+object IncrementCoalescer {
+
+  private type CellKey = (ByteBuffer, ByteBuffer, ByteBuffer, ByteBuffer)
+
+  /**
+   * increments: one per cell with non zero sum.
+   * slots: indices into increments each element contributed to, in element order.
+   * saved: number of increments not sent thanks to coalescing.
+   */
+  case class Coalesced(increments: IndexedSeq[AtomicIncrementRequest], slots: IndexedSeq[Seq[Int]], saved: Int)
+
+  def isIncrement(rpc: HBaseRpc): Boolean = rpc.isInstanceOf[AtomicIncrementRequest]
+
+  def apply(elementRpcs: Seq[Seq[HBaseRpc]]): Coalesced = {
+    val sums = new util.LinkedHashMap[CellKey, java.lang.Long]()
+    val elementKeys = new ArrayBuffer[Seq[CellKey]](elementRpcs.size)
+    var total = 0
+
+    for (rpcs <- elementRpcs) {
+      val keys = new ArrayBuffer[CellKey]()
+      for (rpc <- rpcs) {
+        rpc match {
+          case incr: AtomicIncrementRequest =>
+            val key = (ByteBuffer.wrap(incr.table()), ByteBuffer.wrap(incr.key()),
+              ByteBuffer.wrap(incr.family()), ByteBuffer.wrap(incr.qualifier()))
+            val old = sums.get(key)
+            sums.put(key, if (old == null) incr.getAmount else old + incr.getAmount)
+            keys += key
+            total += 1
+          case _ =>
+        }
+      }
+      elementKeys += keys
+    }
+
+    val increments = new ArrayBuffer[AtomicIncrementRequest](sums.size())
+    val slotOfKey = new util.HashMap[CellKey, Integer]()
+    val it = sums.entrySet().iterator()
+    while (it.hasNext) {
+      val entry = it.next()
+      if (entry.getValue != 0L) {
+        val (table, row, family, qualifier) = entry.getKey
+        slotOfKey.put(entry.getKey, increments.size)
+        increments += new AtomicIncrementRequest(table.array(), row.array(), family.array(), qualifier.array(), entry.getValue)
+      }
+    }
+
+    val slots = elementKeys.map { keys =>
+      keys.flatMap(key => Option(slotOfKey.get(key)).map(_.intValue())).distinct
+    }
+    Coalesced(increments, slots, total - increments.size)
+  }
+}
@@ -75,7 +75,7 @@ trait JSONParser {
       case InnerVal.STRING => InnerVal.withStr(s, version)
       //      case t if InnerVal.NUMERICS.contains(t) => InnerVal.withNumber(BigDecimal(s), version)
       case InnerVal.BYTE | InnerVal.SHORT | InnerVal.INT | InnerVal.LONG | InnerVal.FLOAT | InnerVal.DOUBLE =>
-        InnerVal.withNumber(BigDecimal(s), version)
+        InnerVal.withNumber(BigDecimal(s), dType, version)
       case InnerVal.BOOLEAN => InnerVal.withBoolean(s.toBoolean, version)
       case InnerVal.BLOB => InnerVal.withBlob(s.getBytes, version)
       case _ =>
@@ -94,7 +94,7 @@ trait JSONParser {
             case InnerVal.STRING => Some(InnerVal.withStr(jsValue.toString, version))
             //            case t if InnerVal.NUMERICS.contains(t) =>
             case InnerVal.BYTE | InnerVal.SHORT | InnerVal.INT | InnerVal.LONG | InnerVal.FLOAT | InnerVal.DOUBLE =>
-              Some(InnerVal.withNumber(n.value, version))
+              Some(InnerVal.withNumber(n.value, dType, version))
             case _ => None
           }
         case s: JsString =>
@@ -103,7 +103,7 @@ trait JSONParser {
             case InnerVal.BOOLEAN => Some(InnerVal.withBoolean(s.as[String].toBoolean, version))
             //            case t if InnerVal.NUMERICS.contains(t) =>
             case InnerVal.BYTE | InnerVal.SHORT | InnerVal.INT | InnerVal.LONG | InnerVal.FLOAT | InnerVal.DOUBLE =>
-              Some(InnerVal.withNumber(BigDecimal(s.value), version))
+              Some(InnerVal.withNumber(BigDecimal(s.value), dType, version))
             case _ => None
           }
         case b: JsBoolean =>
@@ -0,0 +1,67 @@
+package com.daumkakao.s2graph.core
+
+import com.daumkakao.s2graph.core.mysqls.{LabelIndex, LabelMeta}
+import com.daumkakao.s2graph.core.types2._
+import org.hbase.async.KeyValue
+
+/** what where clauses read from an edge. */
+trait EdgePropsLike {
+  def srcInnerId: InnerValLike
+
+  def tgtInnerId: InnerValLike
+
+  def propValue(propKey: Byte): Option[InnerValLike]
+}
+
+/**
+ * edge view over raw KeyValue of indexed edge, decodes qualifier and value only when they are touched.
+ * index props live only on qualifier and the rest only on value, so a where clause on index props never decodes value.
+ * toEdge materializes full edge, meant only for edges that survived filtering.
+ */
+final class LazyEdge(kv: KeyValue, param: QueryParam, rowKey: EdgeRowKeyLike, index: LabelIndex) extends EdgePropsLike {
+
+  private val schemaVersion = param.label.schemaVersion
+
+  private lazy val qualifier = {
+    val qBytes = kv.qualifier()
+    EdgeQualifier.fromBytes(qBytes, 0, qBytes.length, schemaVersion)._1
+  }
+
+  private lazy val qualifierProps: Map[Byte, InnerValLike] = qualifier.propsKVs(index.metaSeqs).toMap
+
+  private lazy val valueProps: Map[Byte, InnerValLike] = {
+    val vBytes = kv.value()
+    EdgeValue.fromBytes(vBytes, 0, vBytes.length, schemaVersion)._1.props.toMap
+  }
+
+  private lazy val tgtVertexId: VertexId =
+    if (qualifier.tgtVertexId == null) {
+      qualifierProps.get(LabelMeta.toSeq).orElse(valueProps.get(LabelMeta.toSeq)) match {
+        case None => qualifier.tgtVertexId
+        case Some(vId) => TargetVertexId(HBaseType.DEFAULT_COL_ID, vId)
+      }
+    } else {
+      qualifier.tgtVertexId
+    }
+
+  def srcInnerId: InnerValLike = rowKey.srcVertexId.innerId
+
+  def tgtInnerId: InnerValLike = tgtVertexId.innerId
+
+  /**
+   * value props win over qualifier props on same key, same as toEdge.
+   * index props are read from qualifier first only because value never carries them(see Edge.metas), so value is not decoded.
+   */
+  def propValue(propKey: Byte): Option[InnerValLike] =
+    if (index.metaSeqs.contains(propKey)) qualifierProps.get(propKey).orElse(valueProps.get(propKey))
+    else valueProps.get(propKey).orElse(qualifierProps.get(propKey))
+
+  def toEdge: Edge = {
+    val version = kv.timestamp()
+    /** value props win over qualifier props on same key */
+    val kvsMap = qualifierProps ++ valueProps
+    val ts = kvsMap.get(LabelMeta.timeStampSeq).map(_.toLong).getOrElse(version)
+    val propsWithTs = kvsMap.map { case (k, innerVal) => k -> InnerValLikeWithTs(innerVal, ts) }
+    Edge(Vertex(rowKey.srcVertexId, ts), Vertex(tgtVertexId, ts), rowKey.labelWithDir, qualifier.op, ts, version, propsWithTs)
+  }
+}
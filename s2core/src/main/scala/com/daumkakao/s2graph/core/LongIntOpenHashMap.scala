@@ -0,0 +1,89 @@
+package com.daumkakao.s2graph.core
+
+/**
+ * open addressing(linear probing) hash map from primitive long to primitive int.
+ * no boxing and no entry objects, meant for single threaded hot loops such as Graph.filterEdges.
+ * not thread safe.
+ */
+final class LongIntOpenHashMap(expectedSize: Int = 16) {
+
+  import LongIntOpenHashMap._
+
+  private var capacity = tableSizeFor(expectedSize)
+  private var mask = capacity - 1
+  private var keys = new Array[Long](capacity)
+  private var values = new Array[Int](capacity)
+  private var used = new Array[Boolean](capacity)
+  private var _size = 0
+
+  def size: Int = _size
+
+  def isEmpty: Boolean = _size == 0
+
+  /** index of slot holding key, or of the empty slot where key should go. */
+  private def indexOf(key: Long): Int = {
+    var idx = mix(key) & mask
+    while (used(idx) && keys(idx) != key) {
+      idx = (idx + 1) & mask
+    }
+    idx
+  }
+
+  def contains(key: Long): Boolean = used(indexOf(key))
+
+  def getOrElse(key: Long, default: Int): Int = {
+    val idx = indexOf(key)
+    if (used(idx)) values(idx) else default
+  }
+
+  def put(key: Long, value: Int): Unit = {
+    val idx = indexOf(key)
+    values(idx) = value
+    if (!used(idx)) {
+      keys(idx) = key
+      used(idx) = true
+      _size += 1
+      if (_size * 2 > capacity) grow()
+    }
+  }
+
+  private def grow(): Unit = {
+    val oldKeys = keys
+    val oldValues = values
+    val oldUsed = used
+    capacity = capacity * 2
+    mask = capacity - 1
+    keys = new Array[Long](capacity)
+    values = new Array[Int](capacity)
+    used = new Array[Boolean](capacity)
+    var i = 0
+    while (i < oldUsed.length) {
+      if (oldUsed(i)) {
+        val idx = indexOf(oldKeys(i))
+        keys(idx) = oldKeys(i)
+        values(idx) = oldValues(i)
+        used(idx) = true
+      }
+      i += 1
+    }
+  }
+}
+
+object LongIntOpenHashMap {
+  private val MaxCapacity = 1 << 30
+
+  /** power of two table size keeping load factor under 0.5 for expectedSize entries. */
+  private def tableSizeFor(expectedSize: Int): Int = {
+    val wanted = Math.max(4, Math.min(MaxCapacity.toLong, expectedSize.toLong * 2)).toInt
+    Integer.highestOneBit(wanted - 1) << 1
+  }
+
+  /** spread bits of both halves, since packed keys often differ only in one half. */
+  private def mix(key: Long): Int = {
+    val h = key * 0x9E3779B97F4A7C15L
+    (h ^ (h >>> 32)).toInt
+  }
+
+  /** packs two int hashes into one long key. */
+  def pack(hi: Int, lo: Int): Long = (hi.toLong << 32) | (lo & 0xFFFFFFFFL)
+}
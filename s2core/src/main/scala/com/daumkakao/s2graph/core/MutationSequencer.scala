@@ -0,0 +1,95 @@
+package com.daumkakao.s2graph.core
+
+import java.util.ArrayDeque
+import java.util.concurrent.ConcurrentHashMap
+
+import scala.collection.mutable.ListBuffer
+import scala.concurrent.{ExecutionContext, Future, Promise}
+import scala.util.Try
+
+/**
+ * serializes mutations sharing a key within this node so that at most one of them is in flight per key.
+ * mutations queued behind the in-flight one are merged by merge(when possible) and run once,
+ * every merged caller gets the same result.
+ * keys are dropped as soon as their queue drains, so idle keys cost nothing.
+ */
+final class MutationSequencer[K, T](run: T => Future[Boolean],
+                                    merge: (T, T) => Option[T])(implicit ec: ExecutionContext) {
+
+  import MutationSequencer._
+
+  private val queues = new ConcurrentHashMap[K, Queue[T]]()
+
+  /** number of keys with queued or in-flight mutations. */
+  def size: Int = queues.size()
+
+  def submit(key: K, item: T): Future[Boolean] = {
+    val promise = Promise[Boolean]
+    var queue: Queue[T] = null
+    var shouldStart = false
+    while (queue == null) {
+      val created = new Queue[T]
+      val existing = queues.putIfAbsent(key, created)
+      val candidate = if (existing == null) created else existing
+      candidate.synchronized {
+        if (!candidate.closed) {
+          candidate.pending.add((item, promise))
+          if (!candidate.running) {
+            candidate.running = true
+            shouldStart = true
+          }
+          queue = candidate
+        }
+      }
+      /** closed queue is about to be removed, help removing it and retry */
+      if (queue == null) queues.remove(key, candidate)
+    }
+    if (shouldStart) drain(key, queue)
+    promise.future
+  }
+
+  private def drain(key: K, queue: Queue[T]): Unit = {
+    val batch = queue.synchronized {
+      if (queue.pending.isEmpty) {
+        queue.running = false
+        queue.closed = true
+        None
+      } else {
+        val (first, firstPromise) = queue.pending.poll()
+        val promises = ListBuffer(firstPromise)
+        var merged = first
+        var mergeable = true
+        while (mergeable && !queue.pending.isEmpty) {
+          val (next, nextPromise) = queue.pending.peek()
+          merge(merged, next) match {
+            case Some(m) =>
+              queue.pending.poll()
+              merged = m
+              promises += nextPromise
+            case None => mergeable = false
+          }
+        }
+        Some((merged, promises.toList))
+      }
+    }
+    batch match {
+      case None => queues.remove(key, queue)
+      case Some((item, promises)) =>
+        val future = Try(run(item)).recover { case e => Future.failed(e) }.get
+        future.onComplete { result =>
+          promises.foreach(_.complete(result))
+          drain(key, queue)
+        }
+    }
+  }
+}
+
+object MutationSequencer {
+
+  private final class Queue[T] {
+    val pending = new ArrayDeque[(T, Promise[Boolean])]()
+    var running = false
+    var closed = false
+  }
+
+}
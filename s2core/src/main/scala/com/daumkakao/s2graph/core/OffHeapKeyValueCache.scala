@@ -0,0 +1,175 @@
+package com.daumkakao.s2graph.core
+
+import java.nio.ByteBuffer
+import java.util.ArrayList
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.{AtomicInteger, AtomicLong}
+
+import com.google.common.cache._
+import org.hbase.async.KeyValue
+import play.api.Logger
+
+import scala.collection.JavaConversions._
+
+/**
+ * second tier of query result cache.
+ * keeps raw KeyValues of a GetRequest serialized in direct ByteBuffers, so only a small handle per entry
+ * lives on heap and caching gigabytes of adjacency does not add to GC pause.
+ * edges are decoded again from KeyValues on every hit.
+ * native memory of an entry is freed as soon as it is evicted and no reader holds it, not when GC collects its handle,
+ * so -XX:MaxDirectMemorySize must cover cache.offheap.max.bytes plus what netty of asynchbase uses, otherwise
+ * allocation falls back to System.gc().
+ */
+final class OffHeapKeyValueCache(maxBytes: Long, ttlSeconds: Int) {
+
+  import OffHeapKeyValueCache._
+
+  private val usedBytes = new AtomicLong(0L)
+
+  private val rowIndex = new CacheRowIndex[GetRequestKey.Row, GetRequestKey]()
+
+  private val entries = CacheBuilder.newBuilder()
+    .maximumWeight(maxBytes)
+    .weigher(new Weigher[GetRequestKey, Entry] {
+      def weigh(key: GetRequestKey, entry: Entry): Int = entry.buffer.capacity()
+    })
+    .expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+    .removalListener(new RemovalListener[GetRequestKey, Entry] {
+      def onRemoval(notification: RemovalNotification[GetRequestKey, Entry]): Unit = {
+        usedBytes.addAndGet(-notification.getValue.buffer.capacity())
+        notification.getValue.release()
+        /** re-put of a live key keeps it cached, so its row must stay indexed */
+        if (notification.getCause != RemovalCause.REPLACED) rowIndex.remove(notification.getKey.row, notification.getKey)
+      }
+    })
+    .build[GetRequestKey, Entry]()
+
+  def size: Long = entries.size()
+
+  def bytes: Long = usedBytes.get()
+
+  /** KeyValues cached for key no older than ttlInMillis at now. */
+  def get(key: GetRequestKey, ttlInMillis: Long, now: Long): Option[ArrayList[KeyValue]] = {
+    val entry = entries.getIfPresent(key)
+    if (entry == null) None
+    else if (now - entry.timestamp >= ttlInMillis) {
+      entries.asMap().remove(key, entry)
+      None
+    } else if (!entry.retain()) {
+      /** evicted and freed meanwhile */
+      None
+    } else {
+      try Some(decode(entry.buffer.duplicate())) finally entry.release()
+    }
+  }
+
+  def put(key: GetRequestKey, kvs: ArrayList[KeyValue], now: Long): Unit = {
+    encode(kvs).foreach { buffer =>
+      usedBytes.addAndGet(buffer.capacity())
+      rowIndex.add(key.row, key)
+      entries.put(key, new Entry(buffer, now))
+    }
+  }
+
+  /** drops every entry read from row. */
+  def invalidateRow(row: GetRequestKey.Row): Unit = entries.invalidateAll(rowIndex.keysOf(row))
+
+  def invalidateAll(): Unit = entries.invalidateAll()
+}
+
+object OffHeapKeyValueCache {
+
+  /** buffer is referenced by cache and by readers decoding it, freed when last of them releases. */
+  private final class Entry(val buffer: ByteBuffer, val timestamp: Long) {
+    private val refCnt = new AtomicInteger(1)
+
+    /** false when already freed. */
+    def retain(): Boolean = {
+      var cnt = refCnt.get()
+      while (cnt > 0 && !refCnt.compareAndSet(cnt, cnt + 1)) cnt = refCnt.get()
+      cnt > 0
+    }
+
+    def release(): Unit = if (refCnt.decrementAndGet() == 0) free(buffer)
+  }
+
+  /** cleaner of direct buffer, None where it can not be reached. then native memory waits for GC as before. */
+  private lazy val cleanerMethod: Option[(java.lang.reflect.Method, java.lang.reflect.Method)] = try {
+    val cleaner = ByteBuffer.allocateDirect(1).getClass.getMethod("cleaner")
+    cleaner.setAccessible(true)
+    val clean = cleaner.getReturnType.getMethod("clean")
+    clean.setAccessible(true)
+    Option(cleaner -> clean)
+  } catch {
+    case e: Exception =>
+      Logger.warn(s"direct buffers of off heap cache are freed by GC only. $e")
+      None
+  }
+
+  /** frees native memory of direct buffer now. buffer must not be touched afterwards. */
+  private[core] def free(buffer: ByteBuffer): Unit = {
+    for ((cleaner, clean) <- cleanerMethod if buffer.isDirect) {
+      val c = cleaner.invoke(buffer)
+      if (c != null) clean.invoke(c)
+    }
+  }
+
+  /**
+   * all KeyValues from one GetRequest share row key and family, so those are written once.
+   * layout: count, key, family, then (qualifier, timestamp, value) per KeyValue, byte arrays length prefixed.
+   * None when KeyValues span rows or families.
+   */
+  private[core] def encode(kvs: ArrayList[KeyValue]): Option[ByteBuffer] = {
+    val count = kvs.size()
+    val (key, family) =
+      if (count == 0) (Array.empty[Byte], Array.empty[Byte])
+      else (kvs.get(0).key(), kvs.get(0).family())
+    var size = 4 + 4 + key.length + 4 + family.length
+    var sameRow = true
+    var i = 0
+    while (i < count) {
+      val kv = kvs.get(i)
+      sameRow &&= java.util.Arrays.equals(kv.key(), key) && java.util.Arrays.equals(kv.family(), family)
+      size += 4 + kv.qualifier().length + 8 + 4 + kv.value().length
+      i += 1
+    }
+    if (!sameRow) None
+    else {
+      val buffer = ByteBuffer.allocateDirect(size)
+      buffer.putInt(count)
+      buffer.putInt(key.length).put(key)
+      buffer.putInt(family.length).put(family)
+      i = 0
+      while (i < count) {
+        val kv = kvs.get(i)
+        buffer.putInt(kv.qualifier().length).put(kv.qualifier())
+        buffer.putLong(kv.timestamp())
+        buffer.putInt(kv.value().length).put(kv.value())
+        i += 1
+      }
+      buffer.flip()
+      Some(buffer)
+    }
+  }
+
+  private[core] def decode(buffer: ByteBuffer): ArrayList[KeyValue] = {
+    def readBytes(): Array[Byte] = {
+      val bytes = new Array[Byte](buffer.getInt())
+      buffer.get(bytes)
+      bytes
+    }
+    val count = buffer.getInt()
+    val key = readBytes()
+    val family = readBytes()
+    val kvs = new ArrayList[KeyValue](count)
+    var i = 0
+    while (i < count) {
+      val qualifier = readBytes()
+      val timestamp = buffer.getLong()
+      val value = readBytes()
+      kvs.add(new KeyValue(key, family, qualifier, timestamp, value))
+      i += 1
+    }
+    kvs
+  }
+}
@@ -18,6 +18,15 @@ import Graph.{edgeCf}
 object Query {
   val initialScore = 1.0
   lazy val empty = Query()
+  /** deadline of query without timeout */
+  val noDeadline = Long.MaxValue
+
+  /** remaining time until deadlineTs. Long.MaxValue when query has no deadline. */
+  def remainingTimeInMillis(deadlineTs: Long): Long =
+    if (deadlineTs == noDeadline) Long.MaxValue
+    else deadlineTs - System.currentTimeMillis()
+
+  def isTimedOut(deadlineTs: Long): Boolean = remainingTimeInMillis(deadlineTs) <= 0
 
   def toQuery(srcVertices: Seq[Vertex], queryParam: QueryParam) = {
     Query(srcVertices, List(Step(List(queryParam))))
@@ -45,7 +54,15 @@ case class Query(vertices: Seq[Vertex] = Seq.empty[Vertex],
                  removeCycle: Boolean = false,
                  selectColumns: Seq[String] = Seq.empty[String],
                  groupByColumns: Seq[String] = Seq.empty[String],
-                 filterOutQuery: Option[Query] = None) {
+                 filterOutQuery: Option[Query] = None,
+                 pipelined: Boolean = false,
+                 timeoutInMillis: Int = -1,
+                 limit: Int = -1) {
+
+  /** deadline of whole query latency budget when it starts at startTs. passed through every step of traversal. */
+  def deadlineTs(startTs: Long = System.currentTimeMillis()): Long =
+    if (timeoutInMillis <= 0) Query.noDeadline
+    else startTs + timeoutInMillis
 
   lazy val selectColumnsSet = selectColumns.map { c =>
     if (c == "_from") "from"
@@ -230,6 +247,8 @@ case class QueryParam(labelWithDir: LabelWithDirection, timestamp: Long = System
   //  var end = OrderProps.empty
   var limit = 10
   var offset = 0
+  /** number of edges user asked for, limit can be one more to fetch degree edge on first page */
+  var resultLimit = 10
   var rank = new RankParam(labelWithDir.labelId, List(LabelMeta.countSeq -> 1))
   var isRowKeyOnly = false
   var duration: Option[(Long, Long)] = None
@@ -281,6 +300,7 @@ case class QueryParam(labelWithDir: LabelWithDirection, timestamp: Long = System
   def limit(offset: Int, limit: Int): QueryParam = {
     /** since degree info is located on first always */
     this.limit = if (offset == 0) limit + 1 else limit
+    this.resultLimit = limit
     this.offset = offset
     //    this.columnPaginationFilter = new ColumnPaginationFilter(this.limit, this.offset)
     this
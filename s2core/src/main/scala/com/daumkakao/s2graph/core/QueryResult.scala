@@ -11,10 +11,17 @@ object QueryResult {
       queryParam <- queryParams
     } yield QueryResult(query, stepIdx, queryParam, Seq((Edge(vertex, vertex, queryParam.labelWithDir), Graph.defaultScore)))
   }
+
+  /** empty result marking that query ran out of its time budget before this step produced anything. */
+  def partial(query: Query, stepIdx: Int): QueryResult = {
+    val queryParam = query.steps(stepIdx).queryParams.headOption.getOrElse(QueryParam.empty)
+    QueryResult(query, stepIdx, queryParam, isPartial = true)
+  }
 }
 
 case class QueryResult(query: Query, stepIdx: Int, queryParam: QueryParam,
                        edgeWithScoreLs: Iterable[(Edge, Double)] = Seq.empty[(Edge, Double)],
-                       timestamp: Long = System.currentTimeMillis()) {
+                       timestamp: Long = System.currentTimeMillis(),
+                       isPartial: Boolean = false) {
 
 }
@@ -0,0 +1,85 @@
+package com.daumkakao.s2graph.core
+
+import java.util.ArrayList
+import java.util.concurrent.ConcurrentHashMap
+
+import com.stumbleupon.async.{Callback, Deferred}
+
+/**
+ * coalesces concurrent fetches for the same key into one in-flight Deferred.
+ * the first caller of a key leads and actually sends the request, later callers follow and
+ * get their own Deferred called back with the leader's result(or exception) once it arrives.
+ * the key is dropped as soon as the result arrives, so this never serves stale results.
+ */
+final class SingleFlight[K, V] {
+
+  private val inFlight = new ConcurrentHashMap[K, SingleFlight.Flight[K, V]]()
+
+  def size: Int = inFlight.size()
+
+  /**
+   * Left(flight) when caller leads and must hand its Deferred to flight.lead (or flight.abort on failure),
+   * Right(deferred) following an in-flight fetch.
+   */
+  def join(key: K): Either[SingleFlight.Flight[K, V], Deferred[V]] = {
+    val flight = new SingleFlight.Flight[K, V](this, key)
+    var ret: Either[SingleFlight.Flight[K, V], Deferred[V]] = null
+    while (ret == null) {
+      val existing = inFlight.putIfAbsent(key, flight)
+      if (existing == null) {
+        ret = Left(flight)
+      } else {
+        existing.follow() match {
+          case Some(deferred) => ret = Right(deferred)
+          case None => inFlight.remove(key, existing)
+        }
+      }
+    }
+    ret
+  }
+
+  private def remove(key: K, flight: SingleFlight.Flight[K, V]): Unit = inFlight.remove(key, flight)
+}
+
+object SingleFlight {
+
+  final class Flight[K, V] private[SingleFlight](owner: SingleFlight[K, V], key: K) {
+    private val followers = new ArrayList[Deferred[V]]()
+    private var done = false
+
+    private[SingleFlight] def follow(): Option[Deferred[V]] = synchronized {
+      if (done) None
+      else {
+        val deferred = new Deferred[V]()
+        followers.add(deferred)
+        Some(deferred)
+      }
+    }
+
+    /** hands result of leader's deferred over to followers. returns deferred itself for chaining. */
+    def lead(deferred: Deferred[V]): Deferred[V] = {
+      deferred.addBoth(new Callback[V, V] {
+        def call(arg: V): V = {
+          complete(arg.asInstanceOf[AnyRef])
+          arg
+        }
+      })
+    }
+
+    /** leader could not send its request. */
+    def abort(e: Exception): Unit = complete(e)
+
+    private def complete(arg: AnyRef): Unit = {
+      owner.remove(key, this)
+      val toCall = synchronized {
+        if (done) new ArrayList[Deferred[V]](0)
+        else {
+          done = true
+          new ArrayList[Deferred[V]](followers)
+        }
+      }
+      val it = toCall.iterator()
+      while (it.hasNext) it.next().callback(arg)
+    }
+  }
+}
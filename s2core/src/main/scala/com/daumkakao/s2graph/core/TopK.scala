@@ -0,0 +1,49 @@
+package com.daumkakao.s2graph.core
+
+import scala.collection.mutable.ArrayBuffer
+
+/**
+ * bounded top-k selection.
+ * keeps a min heap of at most k items so selecting k out of n costs O(n log k) instead of sorting all n.
+ */
+object TopK {
+
+  /**
+   * k largest items by ordering, largest first.
+   * stable like sortBy, items equal by ordering keep their input order.
+   * negative k means no limit and falls back to a full sort.
+   */
+  def apply[T](items: TraversableOnce[T], k: Int)(implicit ord: Ordering[T]): Seq[T] = {
+    if (k < 0) {
+      items.toSeq.sorted(ord.reverse)
+    } else if (k == 0) {
+      Seq.empty[T]
+    } else {
+      /** among equal items, earlier one is greater, so it is kept and comes first */
+      val stableOrd = new Ordering[(T, Int)] {
+        override def compare(x: (T, Int), y: (T, Int)): Int = {
+          val cmp = ord.compare(x._1, y._1)
+          if (cmp != 0) cmp else Integer.compare(y._2, x._2)
+        }
+      }
+      val heap = new java.util.PriorityQueue[(T, Int)](k, stableOrd)
+      var idx = 0
+      items.foreach { item =>
+        val indexed = (item, idx)
+        if (heap.size() < k) heap.add(indexed)
+        else if (stableOrd.gt(indexed, heap.peek())) {
+          heap.poll()
+          heap.add(indexed)
+        }
+        idx += 1
+      }
+      val ret = new ArrayBuffer[T](heap.size())
+      while (!heap.isEmpty) ret += heap.poll()._1
+      ret.reverse
+    }
+  }
+
+  /** k items with largest score, largest first. */
+  def byScore[T](items: TraversableOnce[(T, Double)], k: Int): Seq[(T, Double)] =
+    apply(items, k)(Ordering.by[(T, Double), Double](_._2))
+}
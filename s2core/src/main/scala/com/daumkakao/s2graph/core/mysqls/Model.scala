@@ -2,6 +2,7 @@ package com.daumkakao.s2graph.core.mysqls
 
 import java.util.concurrent.TimeUnit
 
+import com.daumkakao.s2graph.core.CacheInvalidation
 import com.daumkakao.s2graph.core.Graph._
 import com.google.common.cache.CacheBuilder
 import com.typesafe.config.Config
@@ -15,6 +16,8 @@ object Model {
   var settings: ConnectionPoolSettings = null
   var maxSize = 10000
   var ttl = 60
+  /** models by name, to apply cache invalidations from other nodes */
+  val models = new java.util.concurrent.ConcurrentHashMap[String, Model[_]]()
   def apply(config: Config) = {
 
     maxSize = config.getInt("cache.max.size")
@@ -28,6 +31,13 @@ object Model {
     ConnectionPool.singleton(config.getString("db.default.url"),
       config.getString("db.default.user"), config.getString("db.default.password"), settings)
   }
+
+  def expireCacheLocally(modelName: String, isList: Boolean, key: String): Unit = {
+    val model = models.get(modelName)
+    if (model == null) Logger.error(s"unknown model $modelName for cache invalidation")
+    else if (isList) model.caches.invalidate(s"$modelName:$key")
+    else model.cache.invalidate(s"$modelName:$key")
+  }
 }
 trait Model[V] extends SQLSyntaxSupport[V] {
   import Model._
@@ -35,6 +45,7 @@ trait Model[V] extends SQLSyntaxSupport[V] {
   implicit val s: DBSession = AutoSession
 
   Logger.info(s"LocalCache[$cName]: TTL[$ttl], MaxSize[$maxSize]")
+  models.put(cName, this)
   val cache = CacheBuilder.newBuilder()
   .expireAfterWrite(ttl, TimeUnit.SECONDS)
   .maximumSize(maxSize)
@@ -79,10 +90,12 @@ trait Model[V] extends SQLSyntaxSupport[V] {
   def expireCache(key: String): Unit = {
     val newKey = s"$cName:$key"
     cache.invalidate(newKey)
+    CacheInvalidation.publish(CacheInvalidation.ModelKey(cName, isList = false, key))
   }
   def expireCaches(key: String): Unit = {
     val newKey = s"$cName:$key"
     caches.invalidate(newKey)
+    CacheInvalidation.publish(CacheInvalidation.ModelKey(cName, isList = true, key))
   }
   def putsToCache(kvs: List[(String, V)]) = {
     kvs.foreach {
@@ -14,7 +14,7 @@ import scala.util.parsing.combinator.JavaTokenParsers
  * Created by shon on 5/30/15.
  */
 case class Where(val clauses: Seq[Clause] = Seq.empty[Clause]) {
-  def filter(edge: Edge): Boolean = {
+  def filter(edge: EdgePropsLike): Boolean = {
     clauses.map(_.filter(edge)).forall(r => r)
   }
 }
@@ -22,12 +22,12 @@ case class Where(val clauses: Seq[Clause] = Seq.empty[Clause]) {
 abstract class Clause {
   def and(otherField: Clause): Clause = And(this, otherField)
   def or(otherField: Clause): Clause = Or(this, otherField)
-  def filter(edge: Edge): Boolean = ???
+  def filter(edge: EdgePropsLike): Boolean = ???
 }
 case class Equal(val propKey: Byte, val value: InnerValLike) extends Clause {
-  override def filter(edge: Edge): Boolean = {
+  override def filter(edge: EdgePropsLike): Boolean = {
     propKey match {
-      case LabelMeta.from.seq => edge.srcVertex.innerId == value
+      case LabelMeta.from.seq => edge.srcInnerId == value
       case LabelMeta.to.seq =>
 //        val log = List(edge.tgtVertex.schemaVer,
 //          edge.tgtVertex.innerId, " vs ", value,
@@ -35,56 +35,56 @@ case class Equal(val propKey: Byte, val value: InnerValLike) extends Clause {
 //          value.bytes.toList
 //        )
 //        println(log.mkString("\t"), "\n")
-        edge.tgtVertex.innerId == value
+        edge.tgtInnerId == value
       case _ =>
-        edge.propsWithTs.get(propKey) match {
+        edge.propValue(propKey) match {
           case None => true
-          case Some(edgeVal) => edgeVal.innerVal == value
+          case Some(edgeVal) => edgeVal == value
         }
     }
 
   }
 }
 case class IN(val propKey: Byte, val values: Set[InnerValLike]) extends Clause {
-  override def filter(edge: Edge): Boolean = {
+  override def filter(edge: EdgePropsLike): Boolean = {
     propKey match {
-      case LabelMeta.from.seq => values.contains(edge.srcVertex.innerId)
-      case LabelMeta.to.seq => values.contains(edge.tgtVertex.innerId)
+      case LabelMeta.from.seq => values.contains(edge.srcInnerId)
+      case LabelMeta.to.seq => values.contains(edge.tgtInnerId)
       case _ =>
-        edge.propsWithTs.get(propKey) match {
+        edge.propValue(propKey) match {
           case None => true
-          case Some(edgeVal) => values.contains(edgeVal.innerVal)
+          case Some(edgeVal) => values.contains(edgeVal)
         }
     }
   }
 }
 case class Between(val propKey: Byte, val minValue: InnerValLike, val maxValue: InnerValLike) extends Clause {
-  override def filter(edge: Edge): Boolean = {
+  override def filter(edge: EdgePropsLike): Boolean = {
     propKey match {
-      case LabelMeta.from.seq => minValue <= edge.srcVertex.innerId && edge.srcVertex.innerId <= maxValue
-      case LabelMeta.to.seq => minValue <= edge.tgtVertex.innerId && edge.tgtVertex.innerId <= maxValue
+      case LabelMeta.from.seq => minValue <= edge.srcInnerId && edge.srcInnerId <= maxValue
+      case LabelMeta.to.seq => minValue <= edge.tgtInnerId && edge.tgtInnerId <= maxValue
       case _ =>
-        edge.propsWithTs.get(propKey) match {
+        edge.propValue(propKey) match {
           case None => true
           case Some(edgeVal) =>
-            minValue <= edgeVal.innerVal && edgeVal.innerVal <= maxValue
+            minValue <= edgeVal && edgeVal <= maxValue
         }
     }
 
   }
 }
 case class Not(val self: Clause) extends Clause {
-  override def filter(edge: Edge): Boolean = {
+  override def filter(edge: EdgePropsLike): Boolean = {
     !self.filter(edge)
   }
 }
 case class And(val left: Clause, val right: Clause) extends Clause {
-  override def filter(edge: Edge): Boolean = {
+  override def filter(edge: EdgePropsLike): Boolean = {
     left.filter(edge) && right.filter(edge)
   }
 }
 case class Or(val left: Clause, val right: Clause) extends Clause {
-  override def filter(edge: Edge): Boolean = {
+  override def filter(edge: EdgePropsLike): Boolean = {
     left.filter(edge) || right.filter(edge)
   }
 }
@@ -0,0 +1,41 @@
+package com.daumkakao.s2graph.core.types2
+
+import org.apache.hadoop.hbase.util.Bytes
+
+/**
+ * writes serialized parts into one array allocated up front with exact length.
+ * serializers compute length from memoized part bytes first, so each result is allocated and copied once
+ * instead of growing through repeated Bytes.add.
+ * result array is handed to hbase rpcs as is, so writer is not pooled or reused.
+ */
+final class BytesWriter(length: Int) {
+  private val buffer = new Array[Byte](length)
+  private var pos = 0
+
+  def put(b: Byte): BytesWriter = {
+    buffer(pos) = b
+    pos += 1
+    this
+  }
+
+  def put(bytes: Array[Byte]): BytesWriter = {
+    System.arraycopy(bytes, 0, buffer, pos, bytes.length)
+    pos += bytes.length
+    this
+  }
+
+  def putInt(i: Int): BytesWriter = {
+    pos = Bytes.putInt(buffer, pos, i)
+    this
+  }
+
+  def putLong(l: Long): BytesWriter = {
+    pos = Bytes.putLong(buffer, pos, l)
+    this
+  }
+
+  def toBytes: Array[Byte] = {
+    if (pos != length) throw new IllegalStateException(s"BytesWriter expected $length bytes, written $pos")
+    buffer
+  }
+}
@@ -10,6 +10,7 @@ object EdgeQualifierInverted extends HBaseDeserializable {
                 len: Int,
                 version: String = DEFAULT_VERSION): (EdgeQualifierInvertedLike, Int) = {
     version match {
+      case VERSION3 => v3.EdgeQualifierInverted.fromBytes(bytes, offset, len, version)
       case VERSION2 => v2.EdgeQualifierInverted.fromBytes(bytes, offset, len, version)
       case VERSION1 => v1.EdgeQualifierInverted.fromBytes(bytes, offset, len, version)
       case _ => throw notSupportedEx(version)
@@ -17,6 +18,7 @@ object EdgeQualifierInverted extends HBaseDeserializable {
   }
   def apply(tgtVertexId: VertexId)(version: String): EdgeQualifierInvertedLike = {
     version match {
+      case VERSION3 => v3.EdgeQualifierInverted(tgtVertexId)
       case VERSION2 => v2.EdgeQualifierInverted(tgtVertexId)
       case VERSION1 => v1.EdgeQualifierInverted(tgtVertexId)
       case _ => throw notSupportedEx(version)
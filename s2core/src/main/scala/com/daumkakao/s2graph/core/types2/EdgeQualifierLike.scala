@@ -10,7 +10,7 @@ object EdgeQualifier extends HBaseDeserializable {
                 len: Int,
                 version: String = DEFAULT_VERSION): (EdgeQualifierLike, Int) = {
     version match {
-      case VERSION2 => v2.EdgeQualifier.fromBytes(bytes, offset, len, version)
+      case VERSION2 | VERSION3 => v2.EdgeQualifier.fromBytes(bytes, offset, len, version)
       case VERSION1 => v1.EdgeQualifier.fromBytes(bytes, offset, len, version)
       case _ => throw notSupportedEx(version)
     }
@@ -19,7 +19,7 @@ object EdgeQualifier extends HBaseDeserializable {
                   tgtVertexId: VertexId = null,
                   op: Byte)(version: String = DEFAULT_VERSION): EdgeQualifierLike = {
     version match {
-      case VERSION2 => v2.EdgeQualifier(idxProps, tgtVertexId, op)
+      case VERSION2 | VERSION3 => v2.EdgeQualifier(idxProps, tgtVertexId, op)
       case VERSION1 => v1.EdgeQualifier(idxProps, tgtVertexId, op)
       case _ => throw notSupportedEx(version)
     }
@@ -10,6 +10,7 @@ object EdgeRowKey extends HBaseDeserializable {
                 len: Int,
                 version: String = DEFAULT_VERSION): (EdgeRowKeyLike, Int) = {
     version match {
+      case VERSION3 => v3.EdgeRowKey.fromBytes(bytes, offset, len, version)
       case VERSION2 => v2.EdgeRowKey.fromBytes(bytes, offset, len, version)
       case VERSION1 => v1.EdgeRowKey.fromBytes(bytes, offset, len, version)
       case _ => throw notSupportedEx(version)
@@ -23,6 +24,7 @@ object EdgeRowKey extends HBaseDeserializable {
                   idxProps: Seq[(Byte, InnerValLike)] = Seq.empty[(Byte, InnerValLike)],
                   tgtVertexId: VertexId = null)(version: String = DEFAULT_VERSION): EdgeRowKeyLike = {
     version match {
+      case VERSION3 => v3.EdgeRowKey(srcVertexId, labelWithDir, labelOrderSeq, isInverted)
       case VERSION2 => v2.EdgeRowKey(srcVertexId, labelWithDir, labelOrderSeq, isInverted)
       case VERSION1 => v1.EdgeRowKey(srcVertexId, labelWithDir, labelOrderSeq, isInverted)
       case _ => throw notSupportedEx(version)
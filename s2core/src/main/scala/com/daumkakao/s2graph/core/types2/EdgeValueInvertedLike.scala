@@ -10,6 +10,7 @@ object EdgeValueInverted extends HBaseDeserializable {
                 len: Int,
                 version: String = DEFAULT_VERSION): (EdgeValueInvertedLike, Int) = {
     version match {
+      case VERSION3 => v3.EdgeValueInverted.fromBytes(bytes, offset, len, version)
       case VERSION2 => v2.EdgeValueInverted.fromBytes(bytes, offset, len, version)
       case VERSION1 => v1.EdgeValueInverted.fromBytes(bytes, offset, len, version)
       case _ => throw notSupportedEx(version)
@@ -19,6 +20,7 @@ object EdgeValueInverted extends HBaseDeserializable {
                   props: Seq[(Byte, InnerValLikeWithTs)] = Seq.empty[(Byte, InnerValLikeWithTs)])
                  (version: String = DEFAULT_VERSION): EdgeValueInvertedLike = {
     version match {
+      case VERSION3 => v3.EdgeValueInverted(op, props)
       case VERSION2 => v2.EdgeValueInverted(op, props)
       case VERSION1 => v1.EdgeValueInverted(op, props)
       case _ => throw notSupportedEx(version)
@@ -10,6 +10,7 @@ object EdgeValue extends HBaseDeserializable {
                 len: Int,
                 version: String = DEFAULT_VERSION): (EdgeValueLike, Int) = {
     version match {
+      case VERSION3 => v3.EdgeValue.fromBytes(bytes, offset, len, version)
       case VERSION2 => v2.EdgeValue.fromBytes(bytes, offset, len, version)
       case VERSION1 => v1.EdgeValue.fromBytes(bytes, offset, len, version)
       case _ => throw notSupportedEx(version)
@@ -17,6 +18,7 @@ object EdgeValue extends HBaseDeserializable {
   }
   def apply(props: Seq[(Byte, InnerValLike)])(version: String): EdgeValueLike = {
     version match {
+      case VERSION3 => v3.EdgeValue(props)
       case VERSION2 => v2.EdgeValue(props)
       case VERSION1 => v1.EdgeValue(props)
       case _ => throw notSupportedEx(version)
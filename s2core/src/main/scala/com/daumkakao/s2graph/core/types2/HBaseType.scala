@@ -6,6 +6,7 @@ import org.apache.hadoop.hbase.util.Bytes
  * Created by shon on 6/6/15.
  */
 object HBaseType {
+  val VERSION3 = "v3"
   val VERSION2 = "v2"
   val VERSION1 = "v1"
   val DEFAULT_VERSION = VERSION2
@@ -93,23 +94,38 @@ object HBaseSerializable {
   def propsToBytes(props: Seq[(Byte, InnerValLike)]): Array[Byte] = {
     val len = props.length
     assert(len < Byte.MaxValue)
-    var bytes = Array.fill(1)(len.toByte)
-    for ((k, v) <- props) bytes = Bytes.add(bytes, v.bytes)
-    bytes
+    var size = 1
+    for ((k, v) <- props) size += v.bytes.length
+    val writer = new BytesWriter(size).put(len.toByte)
+    for ((k, v) <- props) writer.put(v.bytes)
+    writer.toBytes
   }
   def propsToKeyValues(props: Seq[(Byte, InnerValLike)]): Array[Byte] = {
     val len = props.length
     assert(len < Byte.MaxValue)
-    var bytes = Array.fill(1)(len.toByte)
-    for ((k, v) <- props) bytes = Bytes.add(bytes, Array.fill(1)(k), v.bytes)
-    bytes
+    var size = 1
+    for ((k, v) <- props) size += 1 + v.bytes.length
+    val writer = new BytesWriter(size).put(len.toByte)
+    for ((k, v) <- props) writer.put(k).put(v.bytes)
+    writer.toBytes
   }
   def propsToKeyValuesWithTs(props: Seq[(Byte, InnerValLikeWithTs)]): Array[Byte] = {
+    val writer = new BytesWriter(keyValuesWithTsLength(props))
+    writeKeyValuesWithTs(writer, props)
+    writer.toBytes
+  }
+  /** number of bytes propsToKeyValuesWithTs produces, for callers writing it into a larger buffer. */
+  def keyValuesWithTsLength(props: Seq[(Byte, InnerValLikeWithTs)]): Int = {
+    var size = 1
+    for ((k, v) <- props) size += 1 + v.bytes.length
+    size
+  }
+  def writeKeyValuesWithTs(writer: BytesWriter, props: Seq[(Byte, InnerValLikeWithTs)]): BytesWriter = {
     val len = props.length
     assert(len < Byte.MaxValue)
-    var bytes = Array.fill(1)(len.toByte)
-    for ((k, v) <- props) bytes = Bytes.add(bytes, Array.fill(1)(k), v.bytes)
-    bytes
+    writer.put(len.toByte)
+    for ((k, v) <- props) writer.put(k).put(v.bytes)
+    writer
   }
   def labelOrderSeqWithIsInverted(labelOrderSeq: Byte, isInverted: Boolean): Array[Byte] = {
     assert(labelOrderSeq < (1 << 6))
@@ -68,6 +68,7 @@ object InnerVal extends HBaseDeserializable {
                 len: Int,
                 version: String = DEFAULT_VERSION): (InnerValLike, Int) = {
     version match {
+      case VERSION3 => v3.InnerVal.fromBytes(bytes, offset, len, version)
       case VERSION2 => v2.InnerVal.fromBytes(bytes, offset, len, version)
       case VERSION1 => v1.InnerVal.fromBytes(bytes, offset, len, version)
       case _ => throw notSupportedEx(version)
@@ -76,6 +77,7 @@ object InnerVal extends HBaseDeserializable {
 
   def withLong(l: Long, version: String): InnerValLike = {
     version match {
+      case VERSION3 => v3.LongVal(l)
       case VERSION2 => v2.InnerVal(BigDecimal(l))
       case VERSION1 => v1.InnerVal(Some(l), None, None)
       case _ => throw notSupportedEx(version)
@@ -84,6 +86,7 @@ object InnerVal extends HBaseDeserializable {
 
   def withInt(i: Int, version: String): InnerValLike = {
     version match {
+      case VERSION3 => v3.LongVal(i)
       case VERSION2 => v2.InnerVal(BigDecimal(i))
       case VERSION1 => v1.InnerVal(Some(i.toLong), None, None)
       case _ => throw notSupportedEx(version)
@@ -92,6 +95,7 @@ object InnerVal extends HBaseDeserializable {
 
   def withFloat(f: Float, version: String): InnerValLike = {
     version match {
+      case VERSION3 => v3.DoubleVal(f.toDouble)
       case VERSION2 => v2.InnerVal(BigDecimal(f.toDouble))
       case VERSION1 => v1.InnerVal(Some(f.toLong), None, None)
       case _ => throw notSupportedEx(version)
@@ -100,6 +104,7 @@ object InnerVal extends HBaseDeserializable {
 
   def withDouble(d: Double, version: String): InnerValLike = {
     version match {
+      case VERSION3 => v3.DoubleVal(d)
       case VERSION2 => v2.InnerVal(BigDecimal(d))
       case VERSION1 => v1.InnerVal(Some(d.toLong), None, None)
       case _ => throw notSupportedEx(version)
@@ -108,15 +113,24 @@ object InnerVal extends HBaseDeserializable {
 
   def withNumber(num: BigDecimal, version: String): InnerValLike = {
     version match {
+      case VERSION3 => v3.InnerVal.withNumber(num)
       case VERSION2 => v2.InnerVal(num)
       case VERSION1 => v1.InnerVal(Some(num.toLong), None, None)
       case _ => throw notSupportedEx(version)
     }
   }
 
+  /** v3 keeps num as primitive of declared dataType, others are same as withNumber(num, version). */
+  def withNumber(num: BigDecimal, dataType: String, version: String): InnerValLike = {
+    version match {
+      case VERSION3 => v3.InnerVal.withNumber(num, dataType)
+      case _ => withNumber(num, version)
+    }
+  }
+
   def withBoolean(b: Boolean, version: String): InnerValLike = {
     version match {
-      case VERSION2 => v2.InnerVal(b)
+      case VERSION2 | VERSION3 => v2.InnerVal(b)
       case VERSION1 => v1.InnerVal(None, None, Some(b))
       case _ => throw notSupportedEx(version)
     }
@@ -124,14 +138,14 @@ object InnerVal extends HBaseDeserializable {
 
   def withBlob(blob: Array[Byte], version: String): InnerValLike = {
     version match {
-      case VERSION2 => v2.InnerVal(blob)
+      case VERSION2 | VERSION3 => v2.InnerVal(blob)
       case _ => throw notSupportedEx(version)
     }
   }
 
   def withStr(s: String, version: String): InnerValLike = {
     version match {
-      case VERSION2 => v2.InnerVal(s)
+      case VERSION2 | VERSION3 => v2.InnerVal(s)
       case VERSION1 => v1.InnerVal(None, Some(s), None)
       case _ => throw notSupportedEx(version)
     }
@@ -149,20 +163,32 @@ object InnerVal extends HBaseDeserializable {
   /** nasty implementation for backward compatability */
   def convertVersion(innerVal: InnerValLike, dataType: String, toVersion: String): InnerValLike = {
     val ret = toVersion match {
-      case VERSION2 =>
+      case VERSION2 | VERSION3 =>
         if (innerVal.isInstanceOf[v1.InnerVal]) {
           val obj = innerVal.asInstanceOf[v1.InnerVal]
           obj.valueType match {
-            case "long" => InnerVal.withLong(obj.longV.get, toVersion)
+            case "long" => InnerVal.withNumber(BigDecimal(obj.longV.get), dataType, toVersion)
             case "string" => InnerVal.withStr(obj.strV.get, toVersion)
             case "boolean" => InnerVal.withBoolean(obj.boolV.get, toVersion)
             case _ => throw new Exception(s"InnerVal should be [long/integeer/short/byte/string/boolean]")
           }
+        } else if (toVersion == VERSION3 && innerVal.isInstanceOf[v2.InnerVal]) {
+          innerVal.value match {
+            case n: BigDecimal => InnerVal.withNumber(n, dataType, toVersion)
+            case _ => innerVal
+          }
+        } else if (toVersion == VERSION2 && innerVal.isInstanceOf[v3.NumericVal]) {
+          innerVal match {
+            case v3.DoubleVal(d) => InnerVal.withDouble(d, toVersion)
+            case _ => InnerVal.withLong(innerVal.toLong, toVersion)
+          }
         } else {
           innerVal
         }
       case VERSION1 =>
-        if (innerVal.isInstanceOf[v2.InnerVal]) {
+        if (innerVal.isInstanceOf[v3.NumericVal]) {
+          InnerVal.withLong(innerVal.toLong, toVersion)
+        } else if (innerVal.isInstanceOf[v2.InnerVal]) {
           val obj = innerVal.asInstanceOf[v2.InnerVal]
           obj.value match {
             case str: String => InnerVal.withStr(str, toVersion)
@@ -201,6 +227,27 @@ trait InnerValLike extends HBaseSerializable {
 
   override def toString(): String = value.toString
 
+  /** numeric value read directly from primitive or BigDecimal, string is parsed only as last resort. */
+  def toLong: Long = value match {
+    case n: BigDecimal => n.toLong
+    case l: Long => l
+    case i: Int => i.toLong
+    case sh: Short => sh.toLong
+    case b: Byte => b.toLong
+    case d: Double => d.toLong
+    case _ => BigDecimal(toString).toLong
+  }
+
+  def toDouble: Double = value match {
+    case n: BigDecimal => n.toDouble
+    case l: Long => l.toDouble
+    case i: Int => i.toDouble
+    case sh: Short => sh.toDouble
+    case b: Byte => b.toDouble
+    case d: Double => d
+    case _ => toString.toDouble
+  }
+
   override def equals(obj: Any): Boolean = {
     obj match {
       case other: InnerValLike => toString == obj.toString
@@ -257,7 +304,8 @@ object InnerValLikeWithTs extends HBaseDeserializable {
 case class InnerValLikeWithTs(innerVal: InnerValLike, ts: Long)
   extends HBaseSerializable {
 
-  def bytes: Array[Byte] = {
-    Bytes.add(innerVal.bytes, Bytes.toBytes(ts))
+  lazy val bytes: Array[Byte] = {
+    val innerValBytes = innerVal.bytes
+    new BytesWriter(innerValBytes.length + 8).put(innerValBytes).putLong(ts).toBytes
   }
 }
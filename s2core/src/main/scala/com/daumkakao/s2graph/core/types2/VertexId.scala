@@ -45,7 +45,11 @@ class VertexId protected (val colId: Int, val innerId: InnerValLike) extends HBa
     if (storeColId) Bytes.toBytes(colId)
     else Array.empty[Byte]
 
-  def bytes: Array[Byte] = Bytes.add(hashBytes, innerId.bytes, colIdBytes)
+  /** immutable, so encoded once. compareTo and row key building reuse it. */
+  lazy val bytes: Array[Byte] = {
+    val idBytes = innerId.bytes
+    new BytesWriter(hashBytes.length + idBytes.length + colIdBytes.length).put(hashBytes).put(idBytes).put(colIdBytes).toBytes
+  }
 
   override def toString(): String = {
     colId.toString() + "," + innerId.toString()
@@ -53,7 +57,6 @@ class VertexId protected (val colId: Int, val innerId: InnerValLike) extends HBa
   }
 
   override def hashCode(): Int = {
-    Logger.debug(s"VertexId.hashCode")
     if (storeColId) {
       colId * 31 + innerId.hashCode()
     } else {
@@ -105,10 +108,8 @@ case class SourceVertexId(override val colId: Int,
 
   override def equals(obj: Any): Boolean = {
     obj match {
-      case other: SourceVertexId =>
-        val left = innerId.bytes.drop(GraphUtil.bytesForMurMurHash)
-        val right = other.innerId.bytes.drop(GraphUtil.bytesForMurMurHash)
-        Bytes.compareTo(left, right) == 0
+      /** innerId bytes carry no murmur hash prefix, compare them whole. */
+      case other: SourceVertexId => Bytes.equals(innerId.bytes, other.innerId.bytes)
       case _ => false
     }
   }
@@ -10,14 +10,14 @@ object VertexQualifier extends HBaseDeserializable  {
                 len: Int,
                 version: String = DEFAULT_VERSION): (VertexQualifierLike, Int) = {
     version match {
-      case VERSION2 => v2.VertexQualifier.fromBytes(bytes, offset, len, version)
+      case VERSION2 | VERSION3 => v2.VertexQualifier.fromBytes(bytes, offset, len, version)
       case VERSION1 => v1.VertexQualifier.fromBytes(bytes, offset, len, version)
       case _ => throw notSupportedEx(version)
     }
   }
   def apply(propKey: Int)(version: String): VertexQualifierLike = {
     version match {
-      case VERSION2 => v2.VertexQualifier(propKey)
+      case VERSION2 | VERSION3 => v2.VertexQualifier(propKey)
       case VERSION1 => v1.VertexQualifier(propKey)
       case _ => throw notSupportedEx(version)
     }
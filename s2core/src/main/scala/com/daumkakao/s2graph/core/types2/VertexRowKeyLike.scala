@@ -10,14 +10,14 @@ object VertexRowKey extends HBaseDeserializable {
                 len: Int,
                 version: String = DEFAULT_VERSION): (VertexRowKeyLike, Int) = {
     version match {
-      case VERSION2 => v2.VertexRowKey.fromBytes(bytes, offset, len, version)
+      case VERSION2 | VERSION3 => v2.VertexRowKey.fromBytes(bytes, offset, len, version)
       case VERSION1 => v1.VertexRowKey.fromBytes(bytes, offset, len, version)
       case _ => throw notSupportedEx(version)
     }
   }
   def apply(id: VertexId)(version: String): VertexRowKeyLike = {
     version match {
-      case VERSION2 => v2.VertexRowKey(id)
+      case VERSION2 | VERSION3 => v2.VertexRowKey(id)
       case VERSION1 => v1.VertexRowKey(id)
       case _ => throw notSupportedEx(version)
     }
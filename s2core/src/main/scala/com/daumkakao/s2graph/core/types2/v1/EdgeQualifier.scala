@@ -34,8 +34,9 @@ case class EdgeQualifier(props: Seq[(Byte, InnerValLike)],
   lazy val innerTgtVertexId = VertexId.toTargetVertexId(tgtVertexId)
   lazy val propsMap = props.toMap
   lazy val propsBytes = propsToBytes(props)
-  def bytes: Array[Byte] = {
-        Bytes.add(propsBytes, innerTgtVertexId.bytes, Array[Byte](op))
+  lazy val bytes: Array[Byte] = {
+    val tgtBytes = innerTgtVertexId.bytes
+    new BytesWriter(propsBytes.length + tgtBytes.length + 1).put(propsBytes).put(tgtBytes).put(op).toBytes
   }
 
   override def equals(obj: Any) = {
@@ -32,8 +32,9 @@ case class EdgeRowKey(srcVertexId: VertexId,
                       isInverted: Boolean) extends EdgeRowKeyLike {
   import HBaseSerializable._
   lazy val id = VertexId.toSourceVertexId(srcVertexId)
-  def bytes = {
-    Bytes.add(id.bytes, labelWithDir.bytes,
-      labelOrderSeqWithIsInverted(labelOrderSeq, isInverted))
+  lazy val bytes: Array[Byte] = {
+    val idBytes = id.bytes
+    new BytesWriter(idBytes.length + 5).put(idBytes).putInt(labelWithDir.compositeInt)
+      .put(labelOrderSeqWithIsInverted(labelOrderSeq, isInverted)).toBytes
   }
 }
@@ -24,6 +24,6 @@ case class EdgeValueInverted(op: Byte,
                              props: Seq[(Byte, InnerValLikeWithTs)]) extends EdgeValueInvertedLike {
   import HBaseSerializable._
   def bytes: Array[Byte] = {
-    Bytes.add(Array.fill(1)(op), propsToKeyValuesWithTs(props))
+    writeKeyValuesWithTs(new BytesWriter(1 + keyValuesWithTsLength(props)).put(op), props).toBytes
   }
 }
@@ -192,7 +192,7 @@ case class InnerVal(longV: Option[Long], strV: Option[String], boolV: Option[Boo
     }
   }
 
-  def bytes = {
+  lazy val bytes: Array[Byte] = {
     val (meta, valBytes) = (longV, strV, boolV) match {
       case (None, None, None) =>
         (metaByte("default"), Array.empty[Byte])
@@ -211,7 +211,7 @@ case class InnerVal(longV: Option[Long], strV: Option[String], boolV: Option[Boo
         (meta, sBytes)
       case _ => throw new IllegalDataTypeException("innerVal data type should be [long/string/bool]")
     }
-    Bytes.add(Array.fill(1)(meta.toByte), valBytes)
+    new BytesWriter(1 + valBytes.length).put(meta.toByte).put(valBytes).toBytes
   }
 
   override def toString(): String = {
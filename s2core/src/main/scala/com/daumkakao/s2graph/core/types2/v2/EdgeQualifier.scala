@@ -42,9 +42,11 @@ case class EdgeQualifier(props: Seq[(Byte, InnerValLike)],
   lazy val innerTgtVertexId = VertexId.toTargetVertexId(tgtVertexId)
   lazy val propsMap = props.toMap
   lazy val propsBytes = propsToBytes(props)
-  def bytes: Array[Byte] = {
+  lazy val bytes: Array[Byte] = {
         propsMap.get(toSeqByte) match {
-          case None => Bytes.add(propsBytes, innerTgtVertexId.bytes)
+          case None =>
+            val tgtBytes = innerTgtVertexId.bytes
+            new BytesWriter(propsBytes.length + tgtBytes.length).put(propsBytes).put(tgtBytes).toBytes
           case Some(vId) => propsBytes
         }
   }
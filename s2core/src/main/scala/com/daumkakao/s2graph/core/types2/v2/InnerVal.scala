@@ -49,7 +49,8 @@ case class InnerVal(value: Any) extends HBaseSerializable with InnerValLike {
 
   import com.daumkakao.s2graph.core.types2.InnerVal._
 
-  def bytes: Array[Byte] = {
+  /** encoded once per instance, compare and row key building hit this repeatedly. callers must not mutate it. */
+  lazy val bytes: Array[Byte] = {
     val ret = value match {
       case b: Boolean =>
 
@@ -135,7 +136,11 @@ case class InnerVal(value: Any) extends HBaseSerializable with InnerValLike {
     //    Logger.debug(s"InnerVal.compare: $this")
     if (!other.isInstanceOf[InnerVal])
       throw new RuntimeException(s"compare $this vs $other")
-    Bytes.compareTo(bytes, other.bytes) * -1
+    (value, other.value) match {
+      /** numerics compare as numbers without encoding both sides, same order as descending OrderedBytes. */
+      case (v1: BigDecimal, v2: BigDecimal) => v1.compare(v2)
+      case _ => Bytes.compareTo(bytes, other.bytes) * -1
+    }
     //    (value, other.value) match {
     //      case (v1: BigDecimal, v2: BigDecimal) =>
     //        v1.compare(v2)
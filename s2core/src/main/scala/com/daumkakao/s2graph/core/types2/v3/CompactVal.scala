@@ -0,0 +1,174 @@
+package com.daumkakao.s2graph.core.types2.v3
+
+import com.daumkakao.s2graph.core.KGraphExceptions.IllegalDataTypeException
+import com.daumkakao.s2graph.core.types2._
+import org.apache.hadoop.hbase.util.Bytes
+
+/**
+ * compact, non order preserving encoding for values stored where byte order does not matter
+ * (edge values, source vertex id and label of row key, snapshot edge qualifier).
+ * one tag byte followed by zigzag varint for longs, 8 bytes for doubles and varint length for string/blob.
+ * numeric tag follows declared type kept by v3 LongVal/DoubleVal, never the value, so a double 3.0 stays double.
+ * numerics decode straight into v3 LongVal/DoubleVal, others into v2.InnerVal as v3 keeps them in memory.
+ */
+object CompactVal {
+
+  val FALSE = 0.toByte
+  val TRUE = 1.toByte
+  val LONG = 2.toByte
+  val DOUBLE = 3.toByte
+  val STRING = 4.toByte
+  val BLOB = 5.toByte
+  /** numerics of unknown declared type(v2 BigDecimal) keep v2 OrderedBytes encoding */
+  val DECIMAL = 6.toByte
+
+  def zigzag(l: Long): Long = (l << 1) ^ (l >> 63)
+
+  def unzigzag(l: Long): Long = (l >>> 1) ^ -(l & 1)
+
+  /** number of bytes unsigned varint of l takes. */
+  def varLongLength(l: Long): Int = {
+    var v = l
+    var len = 1
+    while ((v & ~0x7FL) != 0L) {
+      v >>>= 7
+      len += 1
+    }
+    len
+  }
+
+  def putVarLong(writer: BytesWriter, l: Long): BytesWriter = {
+    var v = l
+    while ((v & ~0x7FL) != 0L) {
+      writer.put(((v & 0x7F) | 0x80).toByte)
+      v >>>= 7
+    }
+    writer.put(v.toByte)
+  }
+
+  /** returns (value, number of bytes used). */
+  def readVarLong(bytes: Array[Byte], offset: Int): (Long, Int) = {
+    var pos = offset
+    var shift = 0
+    var ret = 0L
+    var b = 0
+    do {
+      b = bytes(pos)
+      ret |= (b & 0x7FL) << shift
+      shift += 7
+      pos += 1
+    } while ((b & 0x80) != 0)
+    (ret, pos - offset)
+  }
+
+  def varLongBytes(l: Long): Array[Byte] = putVarLong(new BytesWriter(varLongLength(l)), l).toBytes
+
+  def zigzagBytes(l: Long): Array[Byte] = varLongBytes(zigzag(l))
+
+  private def withTag(tag: Byte, payload: Array[Byte]): Array[Byte] =
+    new BytesWriter(1 + payload.length).put(tag).put(payload).toBytes
+
+  private def withLength(tag: Byte, payload: Array[Byte]): Array[Byte] = {
+    val len = payload.length.toLong
+    putVarLong(new BytesWriter(1 + varLongLength(len) + payload.length).put(tag), len).put(payload).toBytes
+  }
+
+  def toBytes(innerVal: InnerValLike): Array[Byte] = innerVal match {
+    case LongVal(l) => withTag(LONG, zigzagBytes(l))
+    case DoubleVal(d) => withTag(DOUBLE, Bytes.toBytes(d))
+    case v: v2.InnerVal => v.value match {
+      case b: Boolean => Array(if (b) TRUE else FALSE)
+      case s: String => withLength(STRING, Bytes.toBytes(s))
+      case blob: Array[Byte] => withLength(BLOB, blob)
+      case n: BigDecimal => withTag(DECIMAL, v.bytes)
+      case _ => throw IllegalDataTypeException(s"v3 can`t encode $innerVal")
+    }
+    case _ => throw IllegalDataTypeException(s"v3 can`t encode $innerVal")
+  }
+
+  /** returns (innerVal, number of bytes used). */
+  def fromBytes(bytes: Array[Byte], offset: Int): (InnerValLike, Int) = {
+    val tag = bytes(offset)
+    val pos = offset + 1
+    tag match {
+      case FALSE => (v2.InnerVal(false), 1)
+      case TRUE => (v2.InnerVal(true), 1)
+      case LONG =>
+        val (zigzagged, used) = readVarLong(bytes, pos)
+        (LongVal(unzigzag(zigzagged)), 1 + used)
+      case DOUBLE => (DoubleVal(Bytes.toDouble(bytes, pos)), 9)
+      case STRING =>
+        val (len, used) = readVarLong(bytes, pos)
+        (v2.InnerVal(Bytes.toString(bytes, pos + used, len.toInt)), 1 + used + len.toInt)
+      case BLOB =>
+        val (len, used) = readVarLong(bytes, pos)
+        (v2.InnerVal(Bytes.copy(bytes, pos + used, len.toInt)), 1 + used + len.toInt)
+      case DECIMAL =>
+        val (innerVal, used) = v2.InnerVal.fromBytes(bytes, pos, 0, HBaseType.VERSION3)
+        (innerVal, 1 + used)
+      case _ => throw new RuntimeException(s"unknown v3 value tag $tag")
+    }
+  }
+
+  /** count, then key and value of each prop. */
+  def propsToKeyValues(props: Seq[(Byte, InnerValLike)]): Array[Byte] = {
+    val len = props.length
+    assert(len < Byte.MaxValue)
+    val encoded = props.map { case (k, v) => (k, toBytes(v)) }
+    var size = 1
+    for ((k, v) <- encoded) size += 1 + v.length
+    val writer = new BytesWriter(size).put(len.toByte)
+    for ((k, v) <- encoded) writer.put(k).put(v)
+    writer.toBytes
+  }
+
+  /** count, then key, value and zigzag varint ts of each prop. */
+  def propsToKeyValuesWithTs(props: Seq[(Byte, InnerValLikeWithTs)]): Array[Byte] = {
+    val len = props.length
+    assert(len < Byte.MaxValue)
+    val encoded = props.map { case (k, v) => (k, toBytes(v.innerVal), zigzagBytes(v.ts)) }
+    var size = 1
+    for ((k, v, ts) <- encoded) size += 1 + v.length + ts.length
+    val writer = new BytesWriter(size).put(len.toByte)
+    for ((k, v, ts) <- encoded) writer.put(k).put(v).put(ts)
+    writer.toBytes
+  }
+
+  /** returns (props, end position). */
+  def bytesToKeyValues(bytes: Array[Byte], offset: Int): (Array[(Byte, InnerValLike)], Int) = {
+    var pos = offset
+    val len = bytes(pos)
+    pos += 1
+    val kvs = new Array[(Byte, InnerValLike)](len)
+    var i = 0
+    while (i < len) {
+      val k = bytes(pos)
+      pos += 1
+      val (v, numOfBytesUsed) = fromBytes(bytes, pos)
+      pos += numOfBytesUsed
+      kvs(i) = (k -> v)
+      i += 1
+    }
+    (kvs, pos)
+  }
+
+  /** returns (props, end position). */
+  def bytesToKeyValuesWithTs(bytes: Array[Byte], offset: Int): (Array[(Byte, InnerValLikeWithTs)], Int) = {
+    var pos = offset
+    val len = bytes(pos)
+    pos += 1
+    val kvs = new Array[(Byte, InnerValLikeWithTs)](len)
+    var i = 0
+    while (i < len) {
+      val k = bytes(pos)
+      pos += 1
+      val (v, numOfBytesUsed) = fromBytes(bytes, pos)
+      pos += numOfBytesUsed
+      val (ts, tsBytesUsed) = readVarLong(bytes, pos)
+      pos += tsBytesUsed
+      kvs(i) = (k -> InnerValLikeWithTs(v, unzigzag(ts)))
+      i += 1
+    }
+    (kvs, pos)
+  }
+}
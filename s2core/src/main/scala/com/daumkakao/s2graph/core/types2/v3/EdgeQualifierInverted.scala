@@ -0,0 +1,21 @@
+package com.daumkakao.s2graph.core.types2.v3
+
+import com.daumkakao.s2graph.core.types2._
+
+/**
+ * target vertex inner id, CompactVal encoded.
+ * snapshot edge is only fetched by exact qualifier, so its byte order does not matter.
+ */
+object EdgeQualifierInverted extends HBaseDeserializable {
+  import HBaseType._
+  def fromBytes(bytes: Array[Byte],
+                offset: Int,
+                len: Int,
+                version: String = VERSION3): (EdgeQualifierInverted, Int) = {
+    val (innerId, numOfBytesUsed) = CompactVal.fromBytes(bytes, offset)
+    (EdgeQualifierInverted(TargetVertexId(DEFAULT_COL_ID, innerId)), numOfBytesUsed)
+  }
+}
+case class EdgeQualifierInverted(tgtVertexId: VertexId) extends EdgeQualifierInvertedLike {
+  lazy val bytes: Array[Byte] = CompactVal.toBytes(tgtVertexId.innerId)
+}
@@ -0,0 +1,49 @@
+package com.daumkakao.s2graph.core.types2.v3
+
+import com.daumkakao.s2graph.core.GraphUtil
+import com.daumkakao.s2graph.core.types2._
+
+/**
+ * same layout as v2, but source vertex inner id is CompactVal encoded after murmur hash
+ * and labelWithDir is varint instead of fixed 4 bytes.
+ * row keys are only fetched by exact key, so byte order of these parts does not matter.
+ */
+object EdgeRowKey extends HBaseDeserializable {
+  import HBaseType._
+  import HBaseDeserializable._
+  def fromBytes(bytes: Array[Byte],
+                offset: Int,
+                len: Int,
+                version: String = VERSION3): (EdgeRowKey, Int) = {
+    var pos = offset
+    var numOfBytesUsedTotal = 0
+    /** since murmur hash is prepended, skip numOfBytes for murmur hash */
+    pos += GraphUtil.bytesForMurMurHash
+    val (innerId, numOfBytesUsed) = CompactVal.fromBytes(bytes, pos)
+    val compositeId = SourceVertexId(DEFAULT_COL_ID, innerId)
+    numOfBytesUsedTotal += GraphUtil.bytesForMurMurHash + numOfBytesUsed
+    pos += numOfBytesUsed
+    val (compositeInt, labelBytesUsed) = CompactVal.readVarLong(bytes, pos)
+    val labelWithDir = LabelWithDirection(compositeInt.toInt)
+    numOfBytesUsedTotal += labelBytesUsed
+    pos += labelBytesUsed
+
+    val (labelOrderSeq, isInverted) = bytesToLabelIndexSeqWithIsInverted(bytes, pos)
+    numOfBytesUsedTotal += 1
+    (EdgeRowKey(compositeId, labelWithDir, labelOrderSeq, isInverted), numOfBytesUsedTotal)
+  }
+}
+case class EdgeRowKey(srcVertexId: VertexId,
+                      labelWithDir: LabelWithDirection,
+                      labelOrderSeq: Byte,
+                      isInverted: Boolean) extends EdgeRowKeyLike {
+  import HBaseSerializable._
+  lazy val id = VertexId.toSourceVertexId(srcVertexId)
+  lazy val bytes: Array[Byte] = {
+    val innerIdBytes = CompactVal.toBytes(id.innerId)
+    val compositeInt = labelWithDir.compositeInt.toLong
+    val writer = new BytesWriter(id.hashBytes.length + innerIdBytes.length + CompactVal.varLongLength(compositeInt) + 1)
+      .put(id.hashBytes).put(innerIdBytes)
+    CompactVal.putVarLong(writer, compositeInt).put(labelOrderSeqWithIsInverted(labelOrderSeq, isInverted)).toBytes
+  }
+}
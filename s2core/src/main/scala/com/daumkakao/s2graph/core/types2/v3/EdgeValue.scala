@@ -0,0 +1,17 @@
+package com.daumkakao.s2graph.core.types2.v3
+
+import com.daumkakao.s2graph.core.types2._
+
+object EdgeValue extends HBaseDeserializable {
+  import HBaseType._
+  def fromBytes(bytes: Array[Byte],
+                offset: Int,
+                len: Int,
+                version: String = VERSION3): (EdgeValue, Int) = {
+    val (props, endAt) = CompactVal.bytesToKeyValues(bytes, offset)
+    (EdgeValue(props), endAt - offset)
+  }
+}
+case class EdgeValue(props: Seq[(Byte, InnerValLike)]) extends EdgeValueLike {
+  lazy val bytes: Array[Byte] = CompactVal.propsToKeyValues(props)
+}
@@ -0,0 +1,22 @@
+package com.daumkakao.s2graph.core.types2.v3
+
+import com.daumkakao.s2graph.core.types2._
+
+object EdgeValueInverted extends HBaseDeserializable {
+  import HBaseType._
+  def fromBytes(bytes: Array[Byte],
+                offset: Int,
+                len: Int,
+                version: String = VERSION3): (EdgeValueInverted, Int) = {
+    val op = bytes(offset)
+    val (props, endAt) = CompactVal.bytesToKeyValuesWithTs(bytes, offset + 1)
+    (EdgeValueInverted(op, props), endAt - offset)
+  }
+}
+case class EdgeValueInverted(op: Byte,
+                             props: Seq[(Byte, InnerValLikeWithTs)]) extends EdgeValueInvertedLike {
+  lazy val bytes: Array[Byte] = {
+    val propsBytes = CompactVal.propsToKeyValuesWithTs(props)
+    new BytesWriter(1 + propsBytes.length).put(op).put(propsBytes).toBytes
+  }
+}
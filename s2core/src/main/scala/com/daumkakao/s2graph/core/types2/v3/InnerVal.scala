@@ -0,0 +1,164 @@
+package com.daumkakao.s2graph.core.types2.v3
+
+import com.daumkakao.s2graph.core.types2._
+import org.apache.hadoop.hbase.util._
+
+/**
+ * v3 keeps numerics as primitive long or double picked by declared data type, instead of v2 BigDecimal.
+ * order preserving bytes(qualifiers, vertex ids) of longs are variable length(see encodeLong),
+ * doubles are OrderedBytes fixed width float64. both are decoded without BigDecimal.
+ * string, boolean and blob stay v2.InnerVal.
+ */
+object InnerVal extends HBaseDeserializable {
+
+  import HBaseType._
+
+  val order = v2.InnerVal.order
+
+  /** headers of encodeLong, outside of OrderedBytes headers so fromBytes can tell them apart */
+  val LONG_HEADER_MIN = 0x40
+  val LONG_HEADER_MAX = 0x50
+
+  /**
+   * order preserving variable length long: header, then least significant bytes of l, big endian.
+   * header is LONG_HEADER_MIN + 8 + n for non negative l taking n bytes(0 for zero),
+   * LONG_HEADER_MIN + 8 - n for negative l taking n bytes on top of sign extension,
+   * so longer negatives sort first and longer positives last. every byte is flipped on descending order.
+   */
+  def encodeLong(l: Long, order: Order): Array[Byte] = {
+    val n =
+      if (l >= 0) (71 - java.lang.Long.numberOfLeadingZeros(l)) / 8
+      else Math.max(1, (71 - java.lang.Long.numberOfLeadingZeros(~l)) / 8)
+    val header = if (l >= 0) LONG_HEADER_MIN + 8 + n else LONG_HEADER_MIN + 8 - n
+    val mask = if (order == Order.DESCENDING) 0xFF else 0
+    val bytes = new Array[Byte](1 + n)
+    bytes(0) = (header ^ mask).toByte
+    var i = 0
+    while (i < n) {
+      bytes(1 + i) = ((l >>> (8 * (n - 1 - i))) ^ mask).toByte
+      i += 1
+    }
+    bytes
+  }
+
+  /** header of encodeLong on either order, -1 when b is not. */
+  private def longHeader(b: Byte): Int = {
+    val ascending = if (b >= 0) b.toInt else ~b & 0xFF
+    if (ascending >= LONG_HEADER_MIN && ascending <= LONG_HEADER_MAX) ascending else -1
+  }
+
+  /** returns (value, number of bytes used). */
+  def decodeLong(bytes: Array[Byte], offset: Int): (Long, Int) = {
+    val mask = if (bytes(offset) < 0) 0xFF else 0
+    val l = longHeader(bytes(offset)) - LONG_HEADER_MIN - 8
+    val n = Math.abs(l)
+    var ret = if (l < 0) -1L else 0L
+    var i = 0
+    while (i < n) {
+      ret = (ret << 8) | ((bytes(offset + 1 + i) ^ mask) & 0xFF)
+      i += 1
+    }
+    (ret, 1 + n)
+  }
+
+  def fromBytes(bytes: Array[Byte],
+                offset: Int,
+                len: Int,
+                version: String = VERSION3): (InnerValLike, Int) = {
+    val pbr = new SimplePositionedByteRange(bytes)
+    pbr.setPosition(offset)
+    /** -1, 0 are v2 simple booleans, not OrderedBytes header */
+    if (bytes(offset) == -1 | bytes(offset) == 0) v2.InnerVal.fromBytes(bytes, offset, len, version)
+    else if (longHeader(bytes(offset)) >= 0) {
+      val (l, numOfBytesUsed) = decodeLong(bytes, offset)
+      (LongVal(l), numOfBytesUsed)
+    }
+    else if (OrderedBytes.isFixedFloat64(pbr)) (DoubleVal(OrderedBytes.decodeFloat64(pbr)), pbr.getPosition - offset)
+    else v2.InnerVal.fromBytes(bytes, offset, len, version)
+  }
+
+  /** num as primitive of declared dataType. */
+  def withNumber(num: BigDecimal, dataType: String): InnerValLike = {
+    import com.daumkakao.s2graph.core.types2.InnerVal._
+    toInnerDataType(dataType) match {
+      case FLOAT | DOUBLE => DoubleVal(num.toDouble)
+      case BYTE | SHORT | INT | LONG => LongVal(num.toLong)
+      case _ => InnerVal.withNumber(num)
+    }
+  }
+
+  /** only for numbers of unknown declared type, integral ones become long. */
+  def withNumber(num: BigDecimal): InnerValLike =
+    if (num.isValidLong) LongVal(num.toLong) else DoubleVal(num.toDouble)
+}
+
+/**
+ * primitive numerics of v3. long and double compare, equal and hash by numeric value against each other,
+ * so a long 3 and a double 3.0 are the same as they were as BigDecimal on v2.
+ */
+sealed trait NumericVal extends InnerValLike {
+
+  def compare(other: InnerValLike): Int = (this, other) match {
+    case (LongVal(l), LongVal(o)) => java.lang.Long.compare(l, o)
+    case (_, o: NumericVal) => java.lang.Double.compare(toDouble, o.toDouble)
+    case _ => throw new RuntimeException(s"compare $this vs $other")
+  }
+
+  def +(other: InnerValLike): InnerValLike = (this, other) match {
+    case (LongVal(l), LongVal(o)) => LongVal(l + o)
+    case (_, o: NumericVal) => DoubleVal(toDouble + o.toDouble)
+    case _ => throw new RuntimeException(s"+ $this, $other")
+  }
+
+  override def equals(obj: Any): Boolean = obj match {
+    case other: NumericVal => compare(other) == 0
+    case _ => false
+  }
+
+  override def hashKey(dataType: String): Int = {
+    import com.daumkakao.s2graph.core.types2.InnerVal._
+    dataType match {
+      case BYTE => toLong.toByte.hashCode()
+      case SHORT => toLong.toShort.hashCode()
+      case INT => toLong.toInt.hashCode()
+      case LONG => toLong.hashCode()
+      case FLOAT => toDouble.toFloat.hashCode()
+      case DOUBLE => toDouble.hashCode()
+      case _ => throw new RuntimeException(s"NotSupportede type: $dataType")
+    }
+  }
+
+  /** same as v2, so murmur prefix of vertex ids stays the same for same id. */
+  override def toIdString(): String = toLong.toString
+}
+
+case class LongVal(value: Long) extends NumericVal {
+  import InnerVal._
+
+  lazy val bytes: Array[Byte] = encodeLong(value, order)
+
+  override def toLong: Long = value
+
+  override def toDouble: Double = value.toDouble
+
+  override def hashCode(): Int = java.lang.Long.hashCode(value)
+}
+
+case class DoubleVal(value: Double) extends NumericVal {
+  import InnerVal._
+
+  lazy val bytes: Array[Byte] = {
+    val pbr = new SimplePositionedMutableByteRange(9)
+    OrderedBytes.encodeFloat64(pbr, value, order)
+    pbr.getBytes()
+  }
+
+  override def toLong: Long = value.toLong
+
+  override def toDouble: Double = value
+
+  /** whole doubles hash as long, since they equal LongVal of same value */
+  override def hashCode(): Int =
+    if (value == value.toLong.toDouble) java.lang.Long.hashCode(value.toLong)
+    else java.lang.Double.hashCode(value)
+}
@@ -0,0 +1,45 @@
+package com.daumkakao.s2graph.core
+
+import com.stumbleupon.async.Deferred
+import org.scalatest.{FunSuite, Matchers}
+
+class AdmissionControlTest extends FunSuite with Matchers {
+
+  val tableKey = ("zk", "table")
+
+  test("table is overloaded once max in-flight rpcs are pending on it") {
+    val admissionControl = new AdmissionControl(2)
+    admissionControl.isOverloaded(tableKey) shouldBe false
+    admissionControl.acquire(tableKey)
+    admissionControl.acquire(tableKey)
+    admissionControl.isOverloaded(tableKey) shouldBe true
+    admissionControl.isOverloaded(("zk", "other")) shouldBe false
+    admissionControl.release(tableKey)
+    admissionControl.isOverloaded(tableKey) shouldBe false
+    admissionControl.snapshot shouldBe Map(tableKey -> 1)
+  }
+
+  test("non positive max never overloads") {
+    val admissionControl = new AdmissionControl(0)
+    admissionControl.enabled shouldBe false
+    (0 until 10).foreach(_ => admissionControl.acquire(tableKey))
+    admissionControl.isOverloaded(tableKey) shouldBe false
+  }
+
+  test("tracked rpc is in flight until its deferred is answered") {
+    val admissionControl = new AdmissionControl(1)
+    val answer = new Deferred[java.lang.Boolean]()
+    val tracked = admissionControl.track(tableKey)(answer)
+    admissionControl.isOverloaded(tableKey) shouldBe true
+    answer.callback(java.lang.Boolean.TRUE)
+    tracked.join() shouldBe java.lang.Boolean.TRUE
+    admissionControl.inFlightRpcs(tableKey) shouldBe 0
+
+    val failed = admissionControl.track(tableKey)(Deferred.fromError[java.lang.Boolean](new RuntimeException("cas")))
+    an[RuntimeException] should be thrownBy failed.join()
+    admissionControl.inFlightRpcs(tableKey) shouldBe 0
+
+    an[IllegalStateException] should be thrownBy admissionControl.track[java.lang.Boolean](tableKey)(throw new IllegalStateException)
+    admissionControl.inFlightRpcs(tableKey) shouldBe 0
+  }
+}
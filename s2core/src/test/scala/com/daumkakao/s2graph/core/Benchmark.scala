@@ -0,0 +1,28 @@
+package com.daumkakao.s2graph.core
+
+import java.lang.management.ManagementFactory
+
+import org.scalatest.Tag
+
+/**
+ * tag and timer for benchmark tests, which only print rough numbers to compare implementations.
+ * they are left out of `sbt test`, run them with `sbt -Dbenchmark=true test`(see s2core/build.sbt).
+ */
+object Benchmark extends Tag("Benchmark") {
+
+  private val threadMXBean = ManagementFactory.getThreadMXBean.asInstanceOf[com.sun.management.ThreadMXBean]
+
+  /** runs f warmups times, then prints average time and bytes allocated by this thread per round. returns last result. */
+  def measure[T](name: String, warmups: Int = 5, rounds: Int = 20)(f: => T): T = {
+    (0 until warmups).foreach(_ => f)
+    val tid = Thread.currentThread().getId
+    val startBytes = threadMXBean.getThreadAllocatedBytes(tid)
+    val startTs = System.nanoTime()
+    var ret = f
+    (1 until rounds).foreach(_ => ret = f)
+    val elapsed = (System.nanoTime() - startTs).toDouble / rounds
+    val allocated = (threadMXBean.getThreadAllocatedBytes(tid) - startBytes).toDouble / rounds
+    println(f"$name: ${elapsed / 1000}%.1fus/op, ${allocated / 1024}%.1fKB allocated/op")
+    ret
+  }
+}
@@ -0,0 +1,88 @@
+package com.daumkakao.s2graph.core
+
+import org.hbase.async.{GetRequest, PutRequest}
+import org.scalatest.{BeforeAndAfter, FunSuite, Matchers}
+
+import scala.collection.mutable.ListBuffer
+
+/** kafka is replaced by an in memory publisher, messages from other nodes are fed to handle directly. */
+class CacheInvalidationTest extends FunSuite with Matchers with BeforeAndAfter {
+
+  import CacheInvalidation._
+
+  val published = ListBuffer.empty[String]
+  val table = "s2graph".getBytes
+
+  before {
+    published.clear()
+    CacheInvalidation.enabled = true
+    CacheInvalidation.publisher = (key, msg) => published += msg
+  }
+
+  after {
+    CacheInvalidation.enabled = false
+    Graph.cache.invalidateAll()
+  }
+
+  private def cached(row: String): GetRequestKey = {
+    val key = GetRequestKey(new GetRequest(table, row.getBytes, Graph.edgeCf))
+    Graph.cacheRowIndex.add(key.row, key)
+    Graph.cache.put(key, QueryResult(null, 0, null))
+    key
+  }
+
+  test("encode and decode") {
+    val rows = Rows(Seq(new GetRequestKey.Row(table, Array[Byte](0, -1, 9, 44)), new GetRequestKey.Row(table, "b".getBytes)))
+    val Some((sender, Rows(decodedRows))) = decode(encode("node", rows))
+    sender shouldBe "node"
+    decodedRows shouldBe rows.rows
+
+    decode(encode("node", ModelKey("Label$", isList = true, "label=friends\tx"))) shouldBe
+      Some("node" -> ModelKey("Label$", isList = true, "label=friends\tx"))
+    decode("garbage") shouldBe None
+  }
+
+  test("written rows are invalidated locally and published") {
+    val key = cached("a")
+    val other = cached("b")
+    Graph.invalidateCachedRows(Seq(new PutRequest(table, "a".getBytes, Graph.edgeCf, "q".getBytes, "v".getBytes)), broadcast = true)
+    Graph.cache.getIfPresent(key) shouldBe null
+    Graph.cache.getIfPresent(other) should not be null
+    published.size shouldBe 1
+    decode(published.head).map(_._1) shouldBe Some(nodeId)
+  }
+
+  test("rows written by one call are published once in one message") {
+    def put(row: String) = new PutRequest(table, row.getBytes, Graph.edgeCf, "q".getBytes, "v".getBytes)
+    Graph.invalidateCachedRows(Seq(put("a"), put("b"), put("a")), broadcast = true)
+    published.size shouldBe 1
+    decode(published.head).map(_._2) shouldBe Some(Rows(Seq(put("a"), put("b")).map(p => new GetRequestKey.Row(p.table(), p.key()))))
+  }
+
+  test("re-put key is still invalidated by writes on its row") {
+    val key = cached("a")
+    cached("a") shouldBe key
+    Graph.invalidateCachedRows(Seq(new PutRequest(table, "a".getBytes, Graph.edgeCf, "q".getBytes, "v".getBytes)))
+    Graph.cache.getIfPresent(key) shouldBe null
+  }
+
+  test("invalidations from other nodes are applied, own ones are skipped") {
+    val key = cached("a")
+    handle(encode(nodeId, Rows(Seq(key.row))))
+    Graph.cache.getIfPresent(key) should not be null
+    handle(encode("other", Rows(Seq(key.row))))
+    Graph.cache.getIfPresent(key) shouldBe null
+    published shouldBe empty
+  }
+
+  test("node id is stable across restarts, configured or host name") {
+    val hostName = java.net.InetAddress.getLocalHost.getHostName
+    nodeId shouldBe hostName
+    CacheInvalidation(com.typesafe.config.ConfigFactory.parseString("cache.invalidation.node.id=node-1"))
+    try {
+      nodeId shouldBe "node-1"
+    } finally {
+      nodeId = hostName
+    }
+  }
+}
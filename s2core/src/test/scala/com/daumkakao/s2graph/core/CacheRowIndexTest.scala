@@ -0,0 +1,45 @@
+package com.daumkakao.s2graph.core
+
+import org.scalatest.{FunSuite, Matchers}
+
+class CacheRowIndexTest extends FunSuite with Matchers {
+
+  test("keys are found by row until removed") {
+    val index = new CacheRowIndex[String, Int]()
+    index.add("a", 1)
+    index.add("a", 2)
+    index.add("b", 3)
+    index.keysOf("a").sorted shouldBe Seq(1, 2)
+    index.keysOf("c") shouldBe Nil
+
+    index.remove("a", 1)
+    index.keysOf("a") shouldBe Seq(2)
+    index.remove("a", 2)
+    index.keysOf("a") shouldBe Nil
+    index.size shouldBe 1
+  }
+
+  test("concurrent add and remove keep index consistent") {
+    val index = new CacheRowIndex[Int, Int]()
+    val threads = (0 until 4).map { t =>
+      new Thread(new Runnable {
+        def run(): Unit = {
+          (0 until 10000).foreach { i =>
+            index.add(i % 10, t)
+            index.remove(i % 10, t)
+          }
+          index.add(t, t)
+        }
+      })
+    }
+    threads.foreach(_.start())
+    threads.foreach(_.join())
+    (0 until 4).foreach(t => index.keysOf(t) should contain(t))
+  }
+
+  test("row of get request key") {
+    val get = new org.hbase.async.GetRequest("s2graph".getBytes, "a".getBytes, Graph.edgeCf)
+    val put = new org.hbase.async.PutRequest("s2graph".getBytes, "a".getBytes, Graph.edgeCf, "q".getBytes, "v".getBytes)
+    GetRequestKey(get).row shouldBe new GetRequestKey.Row(put.table(), put.key())
+  }
+}
@@ -5,6 +5,8 @@ import com.daumkakao.s2graph.core.types2._
 import org.hbase.async.{AtomicIncrementRequest, PutRequest}
 import org.scalatest.{BeforeAndAfter, Matchers, FunSuite}
 
+import play.api.libs.json.Json
+
 import scala.collection.mutable.ListBuffer
 
 /**
@@ -362,4 +364,23 @@ class EdgeTest extends FunSuite with Matchers with TestCommon with TestCommonWit
 ////    }
 //    //List(68, -110, -29, -4, 116, -24, 124, -37, 0, 0, 52, -44, 2)
 //  }
+
+  /** rough cost of building rpcs of edge insert, row key, qualifier and value of every indexed and snapshot edge. */
+  test("insert rpcs building benchmark", Benchmark) {
+    for {
+      (l, version) <- Seq((label, VERSION1), (labelV2, VERSION2))
+    } {
+      val js = Json.obj("is_blocked" -> true, "phone_number" -> "xxxx", "age" -> 20, "affinity_score" -> 0.5)
+      val colId = l.srcColumn.id.get
+      val labelWithDir = LabelWithDirection(l.id.get, GraphUtil.directions("out"))
+      /** encoded bytes are memoized, so edges are built again every round */
+      def insertRpcs(): Int = (0 until 1000).map { i =>
+        val props = Management.toProps(l, js).map { case (k, v) => k -> InnerValLikeWithTs(v, ts) }.toMap
+        val edge = Edge(Vertex(SourceVertexId(colId, InnerVal.withLong(i, version)), ts),
+          Vertex(TargetVertexId(colId, InnerVal.withLong(i + 1, version)), ts), labelWithDir, testOp, ts, ts, props)
+        edge.insert().size
+      }.sum
+      Benchmark.measure(s"$version insert rpcs of 1000 edges")(insertRpcs()) should be > 0
+    }
+  }
 }
@@ -0,0 +1,69 @@
+package com.daumkakao.s2graph.core
+
+import com.daumkakao.s2graph.core.types2.{HBaseType, InnerVal, SourceVertexId, TargetVertexId}
+import org.scalatest.{FunSuite, Matchers}
+
+import scala.util.Random
+
+class FrontierTest extends FunSuite with Matchers {
+
+  import HBaseType.{VERSION1, VERSION2}
+
+  private def tgtVertex(colId: Int, id: Long, version: String = VERSION2) =
+    Vertex(TargetVertexId(colId, InnerVal.withLong(id, version)))
+
+  test("merge scores per vertex in first seen order") {
+    val frontier = new Frontier()
+    frontier.add(tgtVertex(1, 10), 1.0)
+    frontier.add(tgtVertex(1, 20), 0.5)
+    frontier.add(tgtVertex(1, 10), 2.0)
+    frontier.add(tgtVertex(2, 10), 0.1)
+
+    frontier.size shouldBe 3
+    frontier.vertexWithScores(0.0).map { case (v, s) => (v.id.colId, v.innerId.toString, s) } shouldBe
+      Seq((1, "10", 3.0), (1, "20", 0.5), (2, "10", 0.1))
+    frontier.vertexWithScores(0.5).map(_._2) shouldBe Seq(3.0, 0.5)
+  }
+
+  test("same vertex regardless of vertex id type and inner val version") {
+    val src = SourceVertexId(1, InnerVal.withLong(10, VERSION2))
+    val tgt = TargetVertexId(1, InnerVal.withLong(10, VERSION2))
+    val v1 = TargetVertexId(1, InnerVal.withLong(10, VERSION1))
+    Frontier.VertexKey(src) shouldBe Frontier.VertexKey(tgt)
+    Frontier.VertexKey(src).hashCode shouldBe Frontier.VertexKey(tgt).hashCode
+    Frontier.VertexKey(v1) shouldBe Frontier.VertexKey(tgt)
+    Frontier.VertexKey(v1).hashCode shouldBe Frontier.VertexKey(tgt).hashCode
+    Frontier.VertexKey(tgt) should not be Frontier.VertexKey(TargetVertexId(2, InnerVal.withLong(10, VERSION2)))
+  }
+
+  test("running top k hands out each vertex once, when its aggregated score enters top k") {
+    val running = new RunningTopK(threshold = 0.5, limit = 2)
+    running.add(Seq(tgtVertex(1, 10) -> 1.0, tgtVertex(1, 20) -> 0.4)).map(_.innerId.toString) shouldBe Seq("10")
+    running.add(Seq(tgtVertex(1, 30) -> 2.0, tgtVertex(1, 20) -> 0.2)).map(_.innerId.toString) shouldBe Seq("30")
+    running.add(Seq(tgtVertex(1, 20) -> 3.0)).map(_.innerId.toString) shouldBe Seq("20")
+    running.add(Seq(tgtVertex(1, 10) -> 1.0)) shouldBe empty
+    new RunningTopK(threshold = 0.0, limit = -1).add(Seq(tgtVertex(1, 10) -> 0.1, tgtVertex(1, 20) -> 0.2)).size shouldBe 2
+  }
+
+  /** rough comparison of next step frontier before(groupBy on vertex id string) and after(typed keys). */
+  test("frontier benchmark: string keyed groupBy vs Frontier", Benchmark) {
+    val numOfEdges = 100000
+    val random = new Random(0)
+    val vertices = (0 until 20000).map(i => tgtVertex(i % 3, i))
+    val edges = Array.fill(numOfEdges)((vertices(random.nextInt(vertices.size)), random.nextDouble()))
+
+    def stringKeyed(): Int = {
+      edges.toSeq.groupBy { case (vertex, score) => vertex.id.toString }.map { case (_, edgesWithScore) =>
+        edgesWithScore.head._1 -> edgesWithScore.map(_._2).sum
+      }.size
+    }
+
+    def typed(): Int = {
+      val frontier = new Frontier(numOfEdges)
+      for ((vertex, score) <- edges) frontier.add(vertex, score)
+      frontier.vertexWithScores(0.0).size
+    }
+
+    Benchmark.measure("stringKeyed")(stringKeyed()) shouldBe Benchmark.measure("typed")(typed())
+  }
+}
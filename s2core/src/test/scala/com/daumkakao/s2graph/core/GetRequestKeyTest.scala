@@ -0,0 +1,46 @@
+package com.daumkakao.s2graph.core
+
+import org.hbase.async.{ColumnRangeFilter, GetRequest}
+import org.scalatest.{FunSuite, Matchers}
+
+class GetRequestKeyTest extends FunSuite with Matchers {
+
+  private def get(row: String, limit: Int = 10, offset: Int = 0, minTs: Long = 0L, maxTs: Long = Long.MaxValue) = {
+    val get = new GetRequest("s2graph".getBytes, row.getBytes, Graph.edgeCf)
+    get.setMaxResultsPerColumnFamily(limit)
+    get.setRowOffsetPerColumnFamily(offset)
+    get.setMinTimestamp(minTs)
+    get.setMaxTimestamp(maxTs)
+    get
+  }
+
+  test("same fetch gives equal keys") {
+    val key = GetRequestKey(get("a"))
+    val other = GetRequestKey(get("a"))
+    key shouldBe other
+    key.hash64 shouldBe other.hash64
+    key.hashCode shouldBe other.hashCode
+  }
+
+  test("anything fetched differently gives different keys") {
+    val key = GetRequestKey(get("a"))
+    GetRequestKey(get("b")) should not be key
+    GetRequestKey(get("a", limit = 11)) should not be key
+    GetRequestKey(get("a", offset = 1)) should not be key
+    GetRequestKey(get("a", minTs = 1L)) should not be key
+    GetRequestKey(get("a", maxTs = 1L)) should not be key
+
+    val filtered = get("a")
+    filtered.filter(new ColumnRangeFilter("a".getBytes, true, "z".getBytes, true))
+    GetRequestKey(filtered) should not be key
+
+    val withQualifier = new GetRequest("s2graph".getBytes, "a".getBytes, Graph.edgeCf, "q".getBytes)
+    GetRequestKey(withQualifier) should not be GetRequestKey(new GetRequest("s2graph".getBytes, "a".getBytes, Graph.edgeCf))
+  }
+
+  test("byte arrays are length prefixed") {
+    val ab = new GetRequest("ab".getBytes, "c".getBytes, Graph.edgeCf)
+    val a = new GetRequest("a".getBytes, "bc".getBytes, Graph.edgeCf)
+    GetRequestKey(ab) should not be GetRequestKey(a)
+  }
+}
@@ -0,0 +1,100 @@
+package com.daumkakao.s2graph.core
+
+import org.apache.hadoop.hbase.util.Bytes
+import org.hbase.async.{AtomicIncrementRequest, DeleteRequest, HBaseRpc, PutRequest}
+import org.scalatest.{FunSuite, Matchers}
+
+import scala.collection.mutable.ListBuffer
+import scala.concurrent.duration._
+import scala.concurrent.{Await, ExecutionContext, Future}
+import scala.util.Random
+
+class GroupCommitTest extends FunSuite with Matchers {
+
+  implicit val ec = ExecutionContext.Implicits.global
+
+  val table = "t".getBytes
+  val cf = "e".getBytes
+
+  def put(row: String, qualifier: String, value: String, ts: Long = 1L) =
+    new PutRequest(table, row.getBytes, cf, qualifier.getBytes, value.getBytes, ts)
+
+  def incr(row: String, qualifier: String, amount: Long) =
+    new AtomicIncrementRequest(table, row.getBytes, cf, qualifier.getBytes, amount)
+
+  def columns(put: PutRequest): Seq[(String, String)] =
+    put.qualifiers().map(Bytes.toString).zip(put.values().map(Bytes.toString)).toSeq
+
+  test("puts on same row and timestamp become one multi column put") {
+    val merged = GroupCommit.merge(Seq(put("r1", "a", "1"), put("r2", "a", "2"), put("r1", "b", "3"),
+      put("r1", "a", "4"), put("r1", "c", "5", ts = 2L)))
+    merged.size shouldBe 3
+    val first = merged(0).asInstanceOf[PutRequest]
+    Bytes.toString(first.key()) shouldBe "r1"
+    columns(first) shouldBe Seq("b" -> "3", "a" -> "4")
+    columns(merged(1).asInstanceOf[PutRequest]) shouldBe Seq("a" -> "2")
+    merged(2).asInstanceOf[PutRequest].timestamp() shouldBe 2L
+  }
+
+  test("increments on same cell are summed") {
+    val merged = GroupCommit.merge(Seq(incr("r1", "d", 1), incr("r1", "d", 1), incr("r1", "e", 1), incr("r1", "d", -1)))
+    merged.map(_.asInstanceOf[AtomicIncrementRequest]).map(i => Bytes.toString(i.qualifier()) -> i.getAmount) shouldBe
+      Seq("d" -> 1L, "e" -> 1L)
+  }
+
+  test("nothing is merged across deletes") {
+    val delete = new DeleteRequest(table, "r1".getBytes, cf, "a".getBytes)
+    val merged = GroupCommit.merge(Seq[HBaseRpc](put("r1", "a", "1"), delete, put("r1", "a", "2")))
+    merged.size shouldBe 3
+    merged(1) shouldBe delete
+  }
+
+  test("batch is flushed when window expires or when it is full") {
+    val flushed = ListBuffer.empty[Seq[HBaseRpc]]
+    val timers = ListBuffer.empty[() => Unit]
+    val committer = new GroupCommit(10, 3, { (zkQuorum, rpcs) =>
+      flushed.synchronized(flushed += rpcs)
+      Future.successful(true)
+    }, (delayMillis, f) => timers += f)
+
+    val first = committer.submit("zk", Seq(put("r1", "a", "1")))
+    val second = committer.submit("zk", Seq(put("r1", "b", "2")))
+    flushed shouldBe empty
+    timers.size shouldBe 1
+    timers.head()
+    Await.result(first, 1.second) shouldBe true
+    Await.result(second, 1.second) shouldBe true
+    flushed.size shouldBe 1
+    flushed.head.size shouldBe 1
+
+    val full = committer.submit("zk", Seq(put("r1", "a", "1"), put("r2", "a", "1"), put("r3", "a", "1")))
+    Await.result(full, 1.second) shouldBe true
+    flushed.size shouldBe 2
+    /** expired window of already flushed batch flushes nothing */
+    timers.last()
+    flushed.size shouldBe 2
+  }
+
+  test("failed flush fails every caller of batch") {
+    val timers = ListBuffer.empty[() => Unit]
+    val committer = new GroupCommit(10, 100, (zkQuorum, rpcs) => Future.failed(new RuntimeException("down")),
+      (delayMillis, f) => timers += f)
+    val futures = (0 until 3).map(i => committer.submit("zk", Seq(incr("r", "d", 1))))
+    timers.foreach(f => f())
+    futures.foreach(f => intercept[RuntimeException](Await.result(f, 1.second)))
+  }
+
+  /** rough numbers of rpcs sent and merge cost for hot rows, before(one rpc each) and after(merged). */
+  test("throughput benchmark: rpcs per flush before and after merge", Benchmark) {
+    val random = new Random(0)
+    val numOfEdges = 10000
+    val rpcs = (0 until numOfEdges).flatMap { i =>
+      val src = s"src${random.nextInt(100)}"
+      Seq(put(src, s"tgt$i", "v"), incr(s"$src-degree", "d", 1))
+    }
+    val merged = Benchmark.measure("merge")(GroupCommit.merge(rpcs))
+    println(s"merge: ${rpcs.size} rpcs -> ${merged.size} rpcs")
+    merged.size should be <= 200
+    merged.collect { case i: AtomicIncrementRequest => i.getAmount }.sum shouldBe numOfEdges
+  }
+}
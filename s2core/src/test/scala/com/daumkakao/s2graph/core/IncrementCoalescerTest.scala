@@ -0,0 +1,34 @@
+package com.daumkakao.s2graph.core
+
+import org.apache.hadoop.hbase.util.Bytes
+import org.hbase.async.{AtomicIncrementRequest, PutRequest}
+import org.scalatest.{FunSuite, Matchers}
+
+class IncrementCoalescerTest extends FunSuite with Matchers {
+
+  val table = "t".getBytes
+  val cf = "e".getBytes
+
+  def incr(row: String, amount: Long) = new AtomicIncrementRequest(table, row.getBytes, cf, Array.empty[Byte], amount)
+
+  def put(row: String) = new PutRequest(table, row.getBytes, cf, "q".getBytes, "v".getBytes)
+
+  test("increments on same degree row are summed across elements") {
+    val coalesced = IncrementCoalescer(Seq(
+      Seq(put("e1"), incr("src1", 1), incr("src1-idx2", 1)),
+      Seq(put("e2"), incr("src1", 1), incr("src1-idx2", 1)),
+      Seq(put("e3"), incr("src2", 1))))
+
+    coalesced.increments.map(i => Bytes.toString(i.key()) -> i.getAmount) shouldBe
+      Seq("src1" -> 2L, "src1-idx2" -> 2L, "src2" -> 1L)
+    coalesced.slots shouldBe Seq(Seq(0, 1), Seq(0, 1), Seq(2))
+    coalesced.saved shouldBe 2
+  }
+
+  test("zero sums are dropped") {
+    val coalesced = IncrementCoalescer(Seq(Seq(incr("src1", 1)), Seq(incr("src1", -1)), Seq(put("e1"))))
+    coalesced.increments shouldBe empty
+    coalesced.slots shouldBe Seq(Nil, Nil, Nil)
+    coalesced.saved shouldBe 2
+  }
+}
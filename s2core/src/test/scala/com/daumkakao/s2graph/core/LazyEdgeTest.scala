@@ -0,0 +1,52 @@
+package com.daumkakao.s2graph.core
+
+import com.daumkakao.s2graph.core.mysqls.{LabelIndex, LabelMeta}
+import com.daumkakao.s2graph.core.parsers.WhereParser
+import com.daumkakao.s2graph.core.types2._
+import org.hbase.async.{KeyValue, PutRequest}
+import org.scalatest.{FunSuite, Matchers}
+import play.api.libs.json.Json
+
+class LazyEdgeTest extends FunSuite with Matchers with TestCommonWithModels {
+
+  import HBaseType.{VERSION1, VERSION2}
+
+  val ts = System.currentTimeMillis()
+
+  def indexedKeyValue(edge: Edge): KeyValue = {
+    val put = edge.edgesWithIndex.head.buildPutsAsync().head.asInstanceOf[PutRequest]
+    new KeyValue(put.key(), put.family(), put.qualifier(), put.timestamp(), put.value())
+  }
+
+  test("indexed edge decoded through lazy view equals edge written") {
+    for {
+      (l, version) <- Seq((label, VERSION1), (labelV2, VERSION2))
+    } {
+      val colId = l.srcColumn.id.get
+      val js = Json.obj("is_hidden" -> true, "is_blocked" -> false, "weight" -> 10, "time" -> 3, "_timestamp" -> ts,
+        "affinity_score" -> 0.5)
+      val props = Management.toProps(l, js).map { case (k, v) => k -> InnerValLikeWithTs(v, ts) }.toMap
+      val edge = Edge(Vertex(SourceVertexId(colId, InnerVal.withLong(1, version)), ts),
+        Vertex(TargetVertexId(colId, InnerVal.withLong(2, version)), ts),
+        LabelWithDirection(l.id.get, GraphUtil.directions("out")), GraphUtil.operations("insert"), ts, ts, props)
+      val queryParam = QueryParam(edge.labelWithDir)
+      val kv = indexedKeyValue(edge)
+
+      val decoded = Edge.toEdge(kv, queryParam).get
+      decoded.tgtVertex.innerId shouldBe edge.tgtVertex.innerId
+      decoded.srcVertex.innerId shouldBe edge.srcVertex.innerId
+      decoded.ts shouldBe ts
+      for ((k, v) <- edge.props if k != LabelMeta.timeStampSeq) decoded.props.get(k) shouldBe Some(v)
+
+      val index = l.indicesMap(LabelIndex.defaultSeq)
+      val lazyEdge = new LazyEdge(kv, queryParam, EdgeRowKey.fromBytes(kv.key(), 0, kv.key().length, version)._1, index)
+      lazyEdge.tgtInnerId shouldBe edge.tgtVertex.innerId
+      for ((k, v) <- edge.props) lazyEdge.propValue(k) shouldBe decoded.propValue(k)
+
+      val where = WhereParser(l).parse("is_hidden = false")
+      where.get.filter(lazyEdge) shouldBe false
+      Edge.toEdge(kv, QueryParam(edge.labelWithDir).where(where)) shouldBe None
+      Edge.toEdge(kv, QueryParam(edge.labelWithDir).where(WhereParser(l).parse("is_hidden = true"))).isDefined shouldBe true
+    }
+  }
+}
@@ -0,0 +1,64 @@
+package com.daumkakao.s2graph.core
+
+import org.scalatest.{FunSuite, Matchers}
+
+import scala.util.Random
+
+class LongIntOpenHashMapTest extends FunSuite with Matchers {
+
+  test("put, get and grow") {
+    val map = new LongIntOpenHashMap(2)
+    val keys = (0 until 10000).map(i => LongIntOpenHashMap.pack(i % 100, i / 100))
+    for ((key, idx) <- keys.zipWithIndex) map.put(key, idx)
+    map.size shouldBe keys.size
+    for ((key, idx) <- keys.zipWithIndex) map.getOrElse(key, -1) shouldBe idx
+    map.contains(LongIntOpenHashMap.pack(100, 100)) shouldBe false
+    map.put(keys.head, 42)
+    map.getOrElse(keys.head, -1) shouldBe 42
+    map.size shouldBe keys.size
+  }
+
+  test("pack keeps both halves") {
+    val packed = LongIntOpenHashMap.pack(-1, 1)
+    (packed >>> 32).toInt shouldBe -1
+    packed.toInt shouldBe 1
+    LongIntOpenHashMap.pack(1, -1) should not be LongIntOpenHashMap.pack(-1, 1)
+  }
+
+  /** rough comparison of filterEdges aggregation before(tuple keys in ConcurrentHashMap) and after(packed long keys). */
+  test("aggregation benchmark: tuple keyed ConcurrentHashMap vs packed LongIntOpenHashMap", Benchmark) {
+    val numOfEdges = 100000
+    val random = new Random(0)
+    val edges = Array.fill(numOfEdges)((random.nextInt(1000), random.nextInt(20000), random.nextDouble()))
+
+    def tupleKeyed(): Int = {
+      val results = new java.util.concurrent.ConcurrentHashMap[(Int, Int, Int, Int), ((Int, Int, Int, Int), (Int, Int), Double)]()
+      for ((src, tgt, score) <- edges) {
+        val hashKey = (src, 1, 0, tgt)
+        val old = results.get(hashKey)
+        if (old != null) results.put(hashKey, (hashKey, (src, tgt), old._3 + score))
+        else results.put(hashKey, (hashKey, (src, tgt), score))
+      }
+      results.size()
+    }
+
+    def packed(): Int = {
+      val slots = new LongIntOpenHashMap(numOfEdges)
+      val scores = new Array[Double](numOfEdges)
+      var size = 0
+      for ((src, tgt, score) <- edges) {
+        val hashKey = LongIntOpenHashMap.pack(src, tgt)
+        val slot = slots.getOrElse(hashKey, -1)
+        if (slot >= 0) scores(slot) += score
+        else {
+          slots.put(hashKey, size)
+          scores(size) = score
+          size += 1
+        }
+      }
+      size
+    }
+
+    Benchmark.measure("tupleKeyed")(tupleKeyed()) shouldBe Benchmark.measure("packed")(packed())
+  }
+}
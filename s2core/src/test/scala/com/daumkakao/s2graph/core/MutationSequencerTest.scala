@@ -0,0 +1,88 @@
+package com.daumkakao.s2graph.core
+
+import java.util.concurrent.atomic.AtomicInteger
+
+import org.scalatest.{FunSuite, Matchers}
+
+import scala.collection.mutable.ListBuffer
+import scala.concurrent.duration._
+import scala.concurrent.{Await, ExecutionContext, Future, Promise}
+
+class MutationSequencerTest extends FunSuite with Matchers {
+
+  implicit val ec = ExecutionContext.Implicits.global
+
+  /** sums up pairs of Ints, never merges negative ones. */
+  def sum(a: Int, b: Int): Option[Int] = if (a < 0 || b < 0) None else Some(a + b)
+
+  test("queued mutations on same key are merged and run once") {
+    val gate = Promise[Boolean]
+    val runs = ListBuffer.empty[Int]
+    val sequencer = new MutationSequencer[String, Int]({ item =>
+      runs.synchronized(runs += item)
+      if (item == 1) gate.future else Future.successful(true)
+    }, sum)
+
+    val first = sequencer.submit("a", 1)
+    val rest = (2 to 5).map(i => sequencer.submit("a", i))
+    sequencer.size shouldBe 1
+    gate.success(true)
+
+    Await.result(Future.sequence(first +: rest), 5.seconds).forall(identity) shouldBe true
+    runs.toList shouldBe List(1, 2 + 3 + 4 + 5)
+  }
+
+  test("unmergeable mutations run one by one in order") {
+    val gate = Promise[Boolean]
+    val runs = ListBuffer.empty[Int]
+    val sequencer = new MutationSequencer[String, Int]({ item =>
+      runs.synchronized(runs += item)
+      if (item == 0) gate.future else Future.successful(item != -2)
+    }, sum)
+
+    val futures = Seq(0, 1, -1, 2, -2).map(i => sequencer.submit("a", i))
+    gate.success(true)
+
+    Await.result(Future.sequence(futures), 5.seconds) shouldBe Seq(true, true, true, true, false)
+    runs.toList shouldBe List(0, 1, -1, 2, -2)
+  }
+
+  test("failure is handed to every merged caller and does not block the key") {
+    val gate = Promise[Boolean]
+    val sequencer = new MutationSequencer[String, Int]({ item =>
+      if (item == 1) gate.future
+      else if (item == 5) throw new RuntimeException("boom")
+      else Future.successful(true)
+    }, sum)
+
+    val first = sequencer.submit("a", 1)
+    val merged = Seq(2, 3).map(i => sequencer.submit("a", i))
+    gate.failure(new RuntimeException("first"))
+
+    intercept[RuntimeException](Await.result(first, 5.seconds))
+    merged.foreach(f => intercept[RuntimeException](Await.result(f, 5.seconds)))
+    intercept[RuntimeException](Await.result(sequencer.submit("a", 5), 5.seconds))
+    Await.result(sequencer.submit("a", 4), 5.seconds) shouldBe true
+  }
+
+  test("at most one mutation in flight per key under concurrent submits") {
+    val inFlight = new AtomicInteger(0)
+    val maxInFlight = new AtomicInteger(0)
+    val total = new AtomicInteger(0)
+    val sequencer = new MutationSequencer[Int, Int]({ item =>
+      val now = inFlight.incrementAndGet()
+      maxInFlight.synchronized(if (now > maxInFlight.get) maxInFlight.set(now))
+      Future {
+        Thread.sleep(1)
+        total.addAndGet(item)
+        inFlight.decrementAndGet()
+        true
+      }
+    }, sum)
+
+    val futures = (0 until 1000).map(i => Future(sequencer.submit(0, 1)).flatMap(identity))
+    Await.result(Future.sequence(futures), 30.seconds).forall(identity) shouldBe true
+    maxInFlight.get shouldBe 1
+    total.get shouldBe 1000
+  }
+}
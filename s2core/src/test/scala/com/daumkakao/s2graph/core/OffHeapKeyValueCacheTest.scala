@@ -0,0 +1,81 @@
+package com.daumkakao.s2graph.core
+
+import java.util.ArrayList
+
+import org.hbase.async.{GetRequest, KeyValue}
+import org.scalatest.{FunSuite, Matchers}
+
+import scala.collection.JavaConversions._
+
+class OffHeapKeyValueCacheTest extends FunSuite with Matchers {
+
+  private val row = "row".getBytes
+
+  private def keyValues(n: Int): ArrayList[KeyValue] = {
+    val kvs = new ArrayList[KeyValue]()
+    (0 until n).foreach { i =>
+      kvs.add(new KeyValue(row, Graph.edgeCf, s"q$i".getBytes, i.toLong, s"value$i".getBytes))
+    }
+    kvs
+  }
+
+  private def key(row: String) = GetRequestKey(new GetRequest("s2graph".getBytes, row.getBytes, Graph.edgeCf))
+
+  private def same(kvs: ArrayList[KeyValue], other: ArrayList[KeyValue]): Unit = {
+    other.size shouldBe kvs.size
+    (0 until kvs.size).foreach { i =>
+      other.get(i).key().toSeq shouldBe kvs.get(i).key().toSeq
+      other.get(i).family().toSeq shouldBe kvs.get(i).family().toSeq
+      other.get(i).qualifier().toSeq shouldBe kvs.get(i).qualifier().toSeq
+      other.get(i).timestamp() shouldBe kvs.get(i).timestamp()
+      other.get(i).value().toSeq shouldBe kvs.get(i).value().toSeq
+    }
+  }
+
+  test("encode and decode keep KeyValues") {
+    for (n <- Seq(0, 1, 100)) {
+      val kvs = keyValues(n)
+      same(kvs, OffHeapKeyValueCache.decode(OffHeapKeyValueCache.encode(kvs).get))
+    }
+  }
+
+  test("KeyValues spanning rows are not cached") {
+    val kvs = keyValues(2)
+    kvs.add(new KeyValue("other".getBytes, Graph.edgeCf, "q".getBytes, 0L, "v".getBytes))
+    OffHeapKeyValueCache.encode(kvs) shouldBe None
+  }
+
+  test("get honors ttl and bytes are accounted") {
+    val cache = new OffHeapKeyValueCache(1024 * 1024, 60)
+    val kvs = keyValues(10)
+    cache.put(key("a"), kvs, 1000L)
+    cache.bytes should be > 0L
+    same(kvs, cache.get(key("a"), 100L, 1050L).get)
+    cache.get(key("b"), 100L, 1050L) shouldBe None
+    cache.get(key("a"), 100L, 1100L) shouldBe None
+    cache.size shouldBe 0L
+    cache.bytes shouldBe 0L
+  }
+
+  test("re-put key is still invalidated by writes on its row") {
+    val cache = new OffHeapKeyValueCache(1024 * 1024, 60)
+    cache.put(key("a"), keyValues(1), 1000L)
+    cache.put(key("a"), keyValues(2), 1000L)
+    cache.invalidateRow(key("a").row)
+    cache.get(key("a"), 100L, 1050L) shouldBe None
+    cache.bytes shouldBe 0L
+  }
+
+  test("native memory is freed on eviction, not left to GC") {
+    val directPool = java.lang.management.ManagementFactory.getPlatformMXBeans(classOf[java.lang.management.BufferPoolMXBean])
+      .find(_.getName == "direct").get
+    val cache = new OffHeapKeyValueCache(1L << 30, 60)
+    val kvs = new ArrayList[KeyValue]()
+    kvs.add(new KeyValue(row, Graph.edgeCf, "q".getBytes, 0L, new Array[Byte](1 << 20)))
+    cache.put(key("row"), kvs, 0L)
+    val used = directPool.getMemoryUsed
+    cache.invalidateAll()
+    cache.bytes shouldBe 0L
+    directPool.getMemoryUsed should be <= (used - (1 << 20))
+  }
+}
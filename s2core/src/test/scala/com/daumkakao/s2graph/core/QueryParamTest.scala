@@ -21,4 +21,21 @@ class QueryParamTest extends FunSuite with Matchers with TestCommon with TestCom
     true
   }
 
+  test("limit fetches one more for degree edge only on first page, result limit stays as asked") {
+    val firstPage = QueryParam(queryParamV2.labelWithDir).limit(0, 10)
+    firstPage.limit shouldBe 11
+    firstPage.resultLimit shouldBe 10
+    val nextPage = QueryParam(queryParamV2.labelWithDir).limit(10, 10)
+    nextPage.limit shouldBe 10
+    nextPage.resultLimit shouldBe 10
+  }
+
+  test("query deadline is fixed when traversal starts") {
+    val deadlineTs = Query(timeoutInMillis = 100).deadlineTs(startTs = 1000L)
+    deadlineTs shouldBe 1100L
+    Query.isTimedOut(deadlineTs) shouldBe true
+    Query().deadlineTs() shouldBe Query.noDeadline
+    Query.isTimedOut(Query.noDeadline) shouldBe false
+  }
+
 }
@@ -0,0 +1,42 @@
+package com.daumkakao.s2graph.core
+
+import com.stumbleupon.async.Deferred
+import org.scalatest.{FunSuite, Matchers}
+
+class SingleFlightTest extends FunSuite with Matchers {
+
+  test("followers share result of leader") {
+    val singleFlight = new SingleFlight[String, String]()
+    val Left(flight) = singleFlight.join("a")
+    val Right(follower1) = singleFlight.join("a")
+    val Right(follower2) = singleFlight.join("a")
+    singleFlight.join("b").isLeft shouldBe true
+
+    val leader = new Deferred[String]()
+    val led = flight.lead(leader)
+    leader.callback("result")
+
+    led.join() shouldBe "result"
+    follower1.join() shouldBe "result"
+    follower2.join() shouldBe "result"
+  }
+
+  test("key is released once result arrives") {
+    val singleFlight = new SingleFlight[String, String]()
+    val Left(flight) = singleFlight.join("a")
+    flight.lead(Deferred.fromResult("first"))
+    singleFlight.size shouldBe 0
+    singleFlight.join("a").isLeft shouldBe true
+  }
+
+  test("followers see exception of leader") {
+    val singleFlight = new SingleFlight[String, String]()
+    val Left(flight) = singleFlight.join("a")
+    val Right(follower) = singleFlight.join("a")
+    flight.abort(new RuntimeException("failed"))
+    intercept[RuntimeException] {
+      follower.join()
+    }.getMessage shouldBe "failed"
+    singleFlight.size shouldBe 0
+  }
+}
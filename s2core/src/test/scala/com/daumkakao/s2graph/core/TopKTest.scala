@@ -0,0 +1,31 @@
+package com.daumkakao.s2graph.core
+
+import org.scalatest.{FunSuite, Matchers}
+
+import scala.util.Random
+
+class TopKTest extends FunSuite with Matchers {
+
+  val scores = Random.shuffle((0 until 1000).map(i => s"v$i" -> i.toDouble))
+
+  test("top k by score, largest first") {
+    TopK.byScore(scores, 3).map(_._2) shouldBe Seq(999.0, 998.0, 997.0)
+    TopK.byScore(scores, 0) shouldBe empty
+  }
+
+  test("k larger than items or negative k sorts everything") {
+    TopK.byScore(scores.take(5), 10).map(_._2) shouldBe scores.take(5).map(_._2).sorted.reverse
+    TopK.byScore(scores, -1).map(_._2) shouldBe scores.map(_._2).sorted.reverse
+  }
+
+  test("same as sortBy and take") {
+    val expected = scores.sortBy(-1 * _._2).take(100)
+    TopK.byScore(scores, 100) shouldBe expected
+  }
+
+  test("ties keep input order, like stable sortBy") {
+    val tied = (0 until 100).map(i => s"v$i" -> (i % 3).toDouble)
+    TopK.byScore(tied, 10) shouldBe tied.sortBy(-1 * _._2).take(10)
+    TopK.byScore(tied, -1) shouldBe tied.sortBy(-1 * _._2)
+  }
+}
@@ -0,0 +1,52 @@
+package com.daumkakao.s2graph.core.types
+
+import com.daumkakao.s2graph.core.types2._
+import org.apache.hadoop.hbase.util.Bytes
+import org.scalatest.{FunSuite, Matchers}
+
+class BytesWriterTest extends FunSuite with Matchers {
+  import HBaseSerializable._
+  import HBaseType.{VERSION1, VERSION2}
+
+  val ts = 1443168000000L
+  val op = 1.toByte
+
+  def propsWithTs(version: String, n: Int): Seq[(Byte, InnerValLikeWithTs)] =
+    (0 until n).map { i =>
+      val innerVal = if (i % 2 == 0) InnerVal.withLong(i * 1000L, version) else InnerVal.withStr(s"value$i", version)
+      i.toByte -> InnerValLikeWithTs(innerVal, ts + i)
+    }
+
+  /** previous implementation, grows array with Bytes.add per prop. */
+  def concatKeyValuesWithTs(props: Seq[(Byte, InnerValLikeWithTs)]): Array[Byte] = {
+    var bytes = Array.fill(1)(props.length.toByte)
+    for ((k, v) <- props) bytes = Bytes.add(bytes, Array.fill(1)(k), Bytes.add(v.innerVal.bytes, Bytes.toBytes(v.ts)))
+    bytes
+  }
+
+  test("pre-sized serializers produce same bytes as concatenation") {
+    for {
+      version <- List(VERSION2, VERSION1)
+      n <- List(0, 1, 5, 20)
+    } {
+      val props = propsWithTs(version, n)
+      propsToKeyValuesWithTs(props).toList shouldBe concatKeyValuesWithTs(props).toList
+      val withoutTs = props.map { case (k, v) => k -> v.innerVal }
+      propsToKeyValues(withoutTs).toList shouldBe
+        withoutTs.foldLeft(Array(n.toByte)) { case (acc, (k, v)) => Bytes.add(acc, Array(k), v.bytes) }.toList
+      propsToBytes(withoutTs).toList shouldBe
+        withoutTs.foldLeft(Array(n.toByte)) { case (acc, (k, v)) => Bytes.add(acc, v.bytes) }.toList
+
+      val inverted = EdgeValueInverted(op, props)(version)
+      inverted.bytes.toList shouldBe (op :: concatKeyValuesWithTs(props).toList)
+      val (decoded, _) = EdgeValueInverted.fromBytes(inverted.bytes, 0, inverted.bytes.length, version)
+      decoded.props.map(_._2) shouldBe props.map(_._2)
+    }
+  }
+
+  test("writer refuses to hand out partially written buffer") {
+    val writer = new BytesWriter(5).put(1.toByte)
+    an[IllegalStateException] should be thrownBy writer.toBytes
+    writer.putInt(7).toBytes.toList shouldBe (1.toByte :: Bytes.toBytes(7).toList)
+  }
+}
@@ -0,0 +1,60 @@
+package com.daumkakao.s2graph.core.types
+
+import com.daumkakao.s2graph.core.Benchmark
+import com.daumkakao.s2graph.core.types2._
+import org.apache.hadoop.hbase.util.Bytes
+import org.scalatest.{FunSuite, Matchers}
+
+import scala.util.Random
+
+class EncodedBytesTest extends FunSuite with Matchers {
+  import HBaseType.{VERSION1, VERSION2}
+
+  test("encoded bytes are memoized") {
+    for {
+      version <- List(VERSION2, VERSION1)
+    } {
+      val innerVal = InnerVal.withLong(10, version)
+      innerVal.bytes should be theSameInstanceAs innerVal.bytes
+      val vId = SourceVertexId(0, innerVal)
+      vId.bytes should be theSameInstanceAs vId.bytes
+      val rowKey = EdgeRowKey(vId, LabelWithDirection(1, 0), 0.toByte, false)(version)
+      rowKey.bytes should be theSameInstanceAs rowKey.bytes
+    }
+  }
+
+  test("source vertex id equality looks at whole inner id") {
+    for {
+      version <- List(VERSION2, VERSION1)
+    } {
+      SourceVertexId(0, InnerVal.withLong(1, version)) shouldBe SourceVertexId(0, InnerVal.withLong(1, version))
+      SourceVertexId(0, InnerVal.withLong(1, version)) should not be SourceVertexId(0, InnerVal.withLong(2, version))
+      SourceVertexId(0, InnerVal.withStr("ab", version)) should not be SourceVertexId(0, InnerVal.withStr("cb", version))
+    }
+  }
+
+  /** rough comparison of compare/equals/hashCode on re-created(encoded every time) and reused(memoized) ids. */
+  test("compare, equals and hashCode benchmark: fresh vs memoized bytes", Benchmark) {
+    val random = new Random(0)
+    val longs = Array.fill(10000)(random.nextLong())
+    val reused = longs.map(l => SourceVertexId(0, InnerVal.withLong(l, VERSION2)))
+
+    def run(ids: Int => VertexId): Int = {
+      var acc = 0
+      var i = 1
+      while (i < longs.length) {
+        val (prev, cur) = (ids(i - 1), ids(i))
+        acc += Integer.signum(prev.compareTo(cur))
+        if (prev == cur) acc += 1
+        acc += prev.hashCode() & 1
+        acc += Integer.signum(prev.innerId.compare(cur.innerId))
+        i += 1
+      }
+      acc
+    }
+
+    val fresh = Benchmark.measure("fresh")(run(i => SourceVertexId(0, InnerVal.withLong(longs(i), VERSION2))))
+    Benchmark.measure("memoized")(run(i => reused(i))) shouldBe fresh
+    Bytes.compareTo(reused(0).bytes, SourceVertexId(0, InnerVal.withLong(longs(0), VERSION2)).bytes) shouldBe 0
+  }
+}
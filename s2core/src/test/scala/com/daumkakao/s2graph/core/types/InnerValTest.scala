@@ -9,7 +9,7 @@ import play.api.libs.json.Json
  * Created by shon on 5/28/15.
  */
 class InnerValTest extends FunSuite with Matchers {
-  import HBaseType.{VERSION2, VERSION1}
+  import HBaseType.{VERSION3, VERSION2, VERSION1}
   val decimals = List(
     BigDecimal(Long.MinValue),
     BigDecimal(Int.MinValue),
@@ -90,6 +90,58 @@ class InnerValTest extends FunSuite with Matchers {
 //      testEncodeDecode(innerVals, version)
 //    }
 //  }
+  test("numeric compare agrees with encoded order") {
+    val innerVals = decimals.map { num => InnerVal.withNumber(num, VERSION2) }
+    for {
+      a <- innerVals
+      b <- innerVals
+    } {
+      Integer.signum(a.compare(b)) shouldBe Integer.signum(Bytes.compareTo(a.bytes, b.bytes) * -1)
+    }
+  }
+  test("primitive accessors") {
+    for {
+      version <- List(VERSION2, VERSION1)
+    } {
+      InnerVal.withLong(Long.MaxValue, version).toLong shouldBe Long.MaxValue
+      InnerVal.withLong(-3, version).toDouble shouldBe -3.0
+      InnerVal.withStr("12", version).toLong shouldBe 12L
+    }
+    InnerVal.withDouble(0.25, VERSION2).toDouble shouldBe 0.25
+    val bytes = InnerVal.withLong(1443168000000L, VERSION2).bytes
+    InnerVal.fromBytes(bytes, 0, bytes.length, VERSION2)._1.toLong shouldBe 1443168000000L
+  }
+  test("v3 numerics are primitives decoded without BigDecimal") {
+    val longs = List(Long.MinValue, Int.MinValue.toLong, -257L, -256L, -255L, -1L, 0L, 1L, 255L, 256L, 1443168000000L, Long.MaxValue)
+      .map(l => InnerVal.withNumber(BigDecimal(l), InnerVal.LONG, VERSION3))
+    val doubles = List(Double.MinValue, -0.5, 0.0, 0.25, 3.0, Double.MaxValue)
+      .map(d => InnerVal.withNumber(BigDecimal(d), InnerVal.DOUBLE, VERSION3))
+    for (innerVals <- List(longs, doubles)) {
+      for (innerVal <- innerVals) {
+        val bytes = innerVal.bytes
+        val (decoded, numOfBytesUsed) = InnerVal.fromBytes(bytes, 0, bytes.length, VERSION3)
+        decoded shouldBe innerVal
+        decoded.value.getClass shouldBe innerVal.value.getClass
+        numOfBytesUsed shouldBe bytes.length
+      }
+      for {
+        a <- innerVals
+        b <- innerVals
+      } {
+        Integer.signum(a.compare(b)) shouldBe Integer.signum(Bytes.compareTo(a.bytes, b.bytes) * -1)
+      }
+    }
+    longs.map(_.value.getClass).distinct shouldBe List(classOf[java.lang.Long])
+    longs.map(_.bytes.length) shouldBe List(9, 5, 3, 2, 2, 2, 1, 2, 2, 3, 7, 9)
+    doubles.map(_.value.getClass).distinct shouldBe List(classOf[java.lang.Double])
+    InnerVal.withNumber(BigDecimal(3), InnerVal.DOUBLE, VERSION3).value shouldBe 3.0
+    InnerVal.withLong(3, VERSION3) shouldBe InnerVal.withDouble(3.0, VERSION3)
+    InnerVal.withLong(3, VERSION3).hashCode shouldBe InnerVal.withDouble(3.0, VERSION3).hashCode
+    (InnerVal.withLong(3, VERSION3) + InnerVal.withLong(4, VERSION3)).toLong shouldBe 7L
+    InnerVal.withLong(1443168000000L, VERSION3).toIdString() shouldBe InnerVal.withLong(1443168000000L, VERSION2).toIdString()
+    InnerVal.convertVersion(InnerVal.withLong(7, VERSION2), InnerVal.LONG, VERSION3) shouldBe InnerVal.withLong(7, VERSION3)
+    InnerVal.convertVersion(InnerVal.withLong(7, VERSION3), InnerVal.LONG, VERSION2) shouldBe InnerVal.withLong(7, VERSION2)
+  }
   test("korean") {
     val small = InnerVal.withStr("가", VERSION2)
     val large = InnerVal.withStr("나", VERSION2)
@@ -0,0 +1,156 @@
+package com.daumkakao.s2graph.core.types
+
+import com.daumkakao.s2graph.core.{Benchmark, JSONParser}
+import com.daumkakao.s2graph.core.types2._
+import com.daumkakao.s2graph.core.types2.v3.CompactVal
+import org.apache.hadoop.hbase.util.Bytes
+import org.scalatest.{FunSuite, Matchers}
+import play.api.libs.json.JsNumber
+
+import scala.util.Random
+
+class V3EncodingTest extends FunSuite with Matchers {
+  import HBaseType.{VERSION2, VERSION3}
+
+  val ts = 1443168000000L
+  val labelWithDir = LabelWithDirection(1234, 1)
+
+  def props(version: String): Seq[(Byte, InnerValLike)] = Seq(
+    0.toByte -> InnerVal.withLong(ts, version),
+    1.toByte -> InnerVal.withLong(-7, version),
+    2.toByte -> InnerVal.withDouble(0.25, version),
+    3.toByte -> InnerVal.withStr("abc", version),
+    4.toByte -> InnerVal.withBoolean(true, version),
+    5.toByte -> InnerVal.withNumber(BigDecimal("12345678901234567890.123456789"), version))
+
+  def propsWithTs(version: String): Seq[(Byte, InnerValLikeWithTs)] =
+    props(version).map { case (k, v) => k -> InnerValLikeWithTs(v, ts) }
+
+  test("varint and zigzag round trip") {
+    for (l <- Seq(0L, 1L, -1L, 63L, -64L, 64L, 300L, ts, -ts, Int.MaxValue.toLong, Long.MaxValue, Long.MinValue)) {
+      val bytes = CompactVal.zigzagBytes(l)
+      bytes.length shouldBe CompactVal.varLongLength(CompactVal.zigzag(l))
+      val (decoded, used) = CompactVal.readVarLong(bytes, 0)
+      CompactVal.unzigzag(decoded) shouldBe l
+      used shouldBe bytes.length
+    }
+    CompactVal.zigzagBytes(-1).length shouldBe 1
+  }
+
+  test("v3 edge row key and values round trip") {
+    val srcVertexId = SourceVertexId(0, InnerVal.withLong(101, VERSION3))
+    val rowKey = EdgeRowKey(srcVertexId, labelWithDir, 2.toByte, true)(VERSION3)
+    val (decodedRowKey, rowKeyBytesUsed) = EdgeRowKey.fromBytes(rowKey.bytes, 0, rowKey.bytes.length, VERSION3)
+    rowKeyBytesUsed shouldBe rowKey.bytes.length
+    decodedRowKey.srcVertexId shouldBe srcVertexId
+    decodedRowKey.labelWithDir shouldBe labelWithDir
+    decodedRowKey.labelOrderSeq shouldBe 2.toByte
+    decodedRowKey.isInverted shouldBe true
+
+    val value = EdgeValue(props(VERSION3))(VERSION3)
+    val (decodedValue, valueBytesUsed) = EdgeValue.fromBytes(value.bytes, 0, value.bytes.length, VERSION3)
+    valueBytesUsed shouldBe value.bytes.length
+    decodedValue.props shouldBe props(VERSION3)
+
+    val inverted = EdgeValueInverted(1.toByte, propsWithTs(VERSION3))(VERSION3)
+    val (decodedInverted, invertedBytesUsed) = EdgeValueInverted.fromBytes(inverted.bytes, 0, inverted.bytes.length, VERSION3)
+    invertedBytesUsed shouldBe inverted.bytes.length
+    decodedInverted.op shouldBe 1.toByte
+    decodedInverted.props shouldBe propsWithTs(VERSION3)
+  }
+
+  test("numeric tag follows declared type, not value") {
+    val parser = new JSONParser {}
+    for ((dataType, tag) <- Seq(InnerVal.DOUBLE -> CompactVal.DOUBLE, InnerVal.LONG -> CompactVal.LONG)) {
+      val innerVal = parser.jsValueToInnerVal(JsNumber(3), dataType, VERSION3).get
+      val bytes = CompactVal.toBytes(innerVal)
+      bytes.head shouldBe tag
+      val (decoded, _) = CompactVal.fromBytes(bytes, 0)
+      decoded.value shouldBe innerVal.value
+      decoded.value.getClass shouldBe innerVal.value.getClass
+    }
+  }
+
+  test("v3 qualifiers keep numeric order of ids and index props") {
+    def qualifier(l: Long) =
+      EdgeQualifier(Seq(0.toByte -> InnerVal.withLong(l, VERSION3)), TargetVertexId(0, InnerVal.withLong(l, VERSION3)), 0.toByte)(VERSION3)
+    val sorted = Seq(-ts, -1L, 0L, 1L, 202L, ts).map(qualifier)
+    sorted.sliding(2).foreach { case Seq(a, b) => Bytes.compareTo(a.bytes, b.bytes) should be > 0 }
+    val bytes = qualifier(ts).bytes
+    val (decoded, _) = EdgeQualifier.fromBytes(bytes, 0, bytes.length, VERSION3)
+    decoded.tgtVertexId.innerId.value shouldBe ts
+  }
+
+  test("v3 snapshot qualifier round trip") {
+    for (innerId <- Seq(InnerVal.withLong(ts, VERSION3), InnerVal.withStr("user:1", VERSION3))) {
+      val qualifier = EdgeQualifierInverted(TargetVertexId(0, innerId))(VERSION3)
+      val (decoded, used) = EdgeQualifierInverted.fromBytes(qualifier.bytes, 0, qualifier.bytes.length, VERSION3)
+      used shouldBe qualifier.bytes.length
+      decoded.tgtVertexId shouldBe TargetVertexId(0, innerId)
+    }
+  }
+
+  /**
+   * cells of one edge as Edge writes them: src 20151001 -> tgt 3041998 on an index over _timestamp,
+   * with _timestamp, a small count and a short string prop.
+   */
+  def edgeCellSizes(version: String): Map[String, Int] = {
+    val ts = 1443168123456L
+    val srcVertexId = SourceVertexId(0, InnerVal.withLong(20151001, version))
+    val tgtVertexId = TargetVertexId(0, InnerVal.withLong(3041998, version))
+    val idxProps = Seq(0.toByte -> InnerVal.withLong(ts, version))
+    val valueProps = Seq(1.toByte -> InnerVal.withLong(3, version), 2.toByte -> InnerVal.withStr("like", version))
+    val snapshotProps = (idxProps ++ valueProps).map { case (k, v) => k -> InnerValLikeWithTs(v, ts) }
+    Map(
+      "indexedRowKey" -> EdgeRowKey(srcVertexId, labelWithDir, 1.toByte, false)(version).bytes.length,
+      "indexedQualifier" -> EdgeQualifier(idxProps, tgtVertexId, 1.toByte)(version).bytes.length,
+      "indexedValue" -> EdgeValue(valueProps)(version).bytes.length,
+      "snapshotRowKey" -> EdgeRowKey(srcVertexId, labelWithDir, 0.toByte, true)(version).bytes.length,
+      "snapshotQualifier" -> EdgeQualifierInverted(tgtVertexId)(version).bytes.length,
+      "snapshotValue" -> EdgeValueInverted(1.toByte, snapshotProps)(version).bytes.length)
+  }
+
+  test("v3 edge cells are smaller than v2") {
+    val v2Sizes = edgeCellSizes(VERSION2)
+    val v3Sizes = edgeCellSizes(VERSION3)
+    v2Sizes shouldBe Map("indexedRowKey" -> 12, "indexedQualifier" -> 14, "indexedValue" -> 11,
+      "snapshotRowKey" -> 12, "snapshotQualifier" -> 5, "snapshotValue" -> 45)
+    v3Sizes shouldBe Map("indexedRowKey" -> 10, "indexedQualifier" -> 12, "indexedValue" -> 11,
+      "snapshotRowKey" -> 10, "snapshotQualifier" -> 5, "snapshotValue" -> 38)
+    v3Sizes.values.sum should be < v2Sizes.values.sum
+  }
+
+  /** rough comparison of stored bytes and encode/decode time of v2 and v3. */
+  test("size and throughput comparison against v2", Benchmark) {
+    val numOfEdges = 10000
+    /** encoded bytes are memoized, so edges are built again on every round. */
+    def edges(version: String) = {
+      val random = new Random(0)
+      (0 until numOfEdges).map { i =>
+        val rowKey = EdgeRowKey(SourceVertexId(0, InnerVal.withLong(random.nextInt(1000000), version)), labelWithDir,
+          0.toByte, false)(version)
+        val value = EdgeValueInverted(1.toByte, Seq(
+          0.toByte -> InnerValLikeWithTs(InnerVal.withLong(ts + i, version), ts + i),
+          1.toByte -> InnerValLikeWithTs(InnerVal.withLong(random.nextInt(100), version), ts + i),
+          2.toByte -> InnerValLikeWithTs(InnerVal.withStr(s"item${random.nextInt(1000)}", version), ts + i)))(version)
+        (rowKey, value)
+      }
+    }
+
+    def measure(version: String): Long = {
+      val total = Benchmark.measure(s"$version build, encode and decode $numOfEdges edges", 1, 5) {
+        var total = 0L
+        for ((rowKey, value) <- edges(version)) {
+          val valueBytes = value.bytes
+          total += rowKey.bytes.length + valueBytes.length
+          EdgeValueInverted.fromBytes(valueBytes, 0, valueBytes.length, version)
+        }
+        total
+      }
+      println(s"$version: ${total / numOfEdges} bytes/edge")
+      total
+    }
+
+    measure(VERSION3) should be < measure(VERSION2)
+  }
+}